@@ -0,0 +1,20 @@
+package dk.dbc.triton.core;
+
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Publishes {@link LruCache} statistics as gauges tagged with the cache name
+ */
+public class CacheMetrics {
+    private CacheMetrics() {}
+
+    public static void register(MetricRegistry metricRegistry, String cacheName, LruCache<?, ?> cache) {
+        final Tag tag = new Tag("cache", cacheName);
+        metricRegistry.gauge("cache_hits", cache, LruCache::getHitCount, tag);
+        metricRegistry.gauge("cache_misses", cache, LruCache::getMissCount, tag);
+        metricRegistry.gauge("cache_evictions", cache, LruCache::getEvictionCount, tag);
+        metricRegistry.gauge("cache_size", cache, LruCache::size, tag);
+        metricRegistry.gauge("cache_weight", cache, LruCache::getWeight, tag);
+    }
+}
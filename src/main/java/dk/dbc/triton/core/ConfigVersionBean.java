@@ -0,0 +1,111 @@
+package dk.dbc.triton.core;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.apache.solr.common.cloud.SolrZkClient;
+import org.apache.solr.common.cloud.ZkConfigManager;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Tracks versions of solr collection configurations (schema,
+ * solrconfig.xml, analysis resources etc.) stored in the zookeeper
+ * <p>
+ * The version of a configuration is the highest transaction id having
+ * created or modified any node in the /configs/{configName} tree. Once
+ * computed, versions are kept until a zookeeper watch on the tree fires,
+ * after which they are recomputed on next request.
+ * </p>
+ */
+@Singleton
+public class ConfigVersionBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigVersionBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+
+    private final Map<String, String> configNames = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Map<String, Watcher> watchers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> changeCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Returns current configuration version of given collection
+     * @param collection solr collection or collection alias
+     * @return configuration version or empty if version could not be determined
+     */
+    @Lock(READ)
+    public Optional<String> getVersion(String collection) {
+        try {
+            final String configName = getConfigName(solrClientFactoryBean.resolveCollectionAlias(collection));
+            Long version = versions.get(configName);
+            if (version == null) {
+                final AtomicLong changeCount = changeCounts.computeIfAbsent(configName, name -> new AtomicLong());
+                final long changeCountBefore = changeCount.get();
+                version = fetchVersion(configName);
+                // Only remember the version if no watch fired during the walk
+                if (changeCount.get() == changeCountBefore) {
+                    versions.put(configName, version);
+                }
+            }
+            return Optional.of(configName + ":" + version);
+        } catch (KeeperException | RuntimeException e) {
+            LOGGER.warn("Unable to determine config version of {}: {}", collection, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Optional.empty();
+    }
+
+    private String getConfigName(String collection) throws KeeperException {
+        String configName = configNames.get(collection);
+        if (configName == null) {
+            configName = getZkStateReader().readConfigName(collection);
+            configNames.put(collection, configName);
+        }
+        return configName;
+    }
+
+    /* Walks the configuration tree while (re)registering watches
+       invalidating the version on any change */
+    private long fetchVersion(String configName) throws KeeperException, InterruptedException {
+        final Watcher watcher = watchers.computeIfAbsent(configName, name -> event -> {
+            changeCounts.get(name).incrementAndGet();
+            if (versions.remove(name) != null) {
+                LOGGER.info("Config {} changed ({} on {})", name, event.getType(), event.getPath());
+            }
+        });
+        return fetchVersion(getZkStateReader().getZkClient(),
+                ZkConfigManager.CONFIGS_ZKNODE + "/" + configName, watcher);
+    }
+
+    private long fetchVersion(SolrZkClient zkClient, String path, Watcher watcher)
+            throws KeeperException, InterruptedException {
+        final Stat stat = zkClient.exists(path, watcher, true);
+        if (stat == null) {
+            return 0;
+        }
+        long version = Math.max(stat.getMzxid(), stat.getPzxid());
+        if (stat.getNumChildren() > 0) {
+            for (String child : zkClient.getChildren(path, watcher, true)) {
+                version = Math.max(version, fetchVersion(zkClient, path + "/" + child, watcher));
+            }
+        }
+        return version;
+    }
+
+    private ZkStateReader getZkStateReader() {
+        return solrClientFactoryBean.getCloudSolrClient().getZkStateReader();
+    }
+}
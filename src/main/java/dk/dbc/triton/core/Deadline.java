@@ -0,0 +1,43 @@
+package dk.dbc.triton.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a request must be completed
+ */
+public class Deadline {
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param millis number of milliseconds from now
+     * @return deadline expiring the given number of milliseconds from now
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @return number of milliseconds left before this deadline
+     * expires, zero if expired
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return number of milliseconds left before this deadline expires
+     * as passed on to solr as timeAllowed, at least one since solr
+     * takes zero to mean no limit
+     */
+    public int timeAllowedMillis() {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remainingMillis()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,14 @@
+package dk.dbc.triton.core;
+
+/**
+ * Thrown when a request {@link Deadline} expires before the request completes
+ */
+public class DeadlineExpiredException extends TritonException {
+    public DeadlineExpiredException(String message) {
+        super(message);
+    }
+
+    public DeadlineExpiredException(String message, Throwable e) {
+        super(message, e);
+    }
+}
@@ -0,0 +1,128 @@
+package dk.dbc.triton.core;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.params.FacetParams;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans an index by faceting on the index field in index order
+ * <p>
+ * Facet counts only include live documents, so the frequencies returned
+ * are exact without looking up each term. Documents are restricted to
+ * those having a value from the term onwards, and to those matching an
+ * optional filter query, which solr caches in its filter cache. Documents
+ * with several values in the index can contribute terms before the term,
+ * these are skipped, paging through the facet values if necessary. At
+ * most FACET_SCAN_MAX_PAGES pages are requested, after which the terms
+ * found so far are returned in a result marked as truncated.
+ * </p>
+ * <p>
+ * Facet values are only sorted ascending, so only scanning from the term
+ * onwards is supported.
+ * </p>
+ */
+@Stateless
+public class FacetScanBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FacetScanBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Inject HedgedRequestBean hedgedRequestBean;
+    @EJB ReplicaRouterBean replicaRouterBean;
+
+    @Inject
+    @ConfigProperty(name = "FACET_SCAN_MAX_PAGES", defaultValue = "10")
+    int maxPages;
+
+    /**
+     * Scans index of collection from the given term onwards
+     * @param collection solr collection
+     * @param index index field
+     * @param term term to scan from
+     * @param inclusive whether or not the term itself is included
+     * @param size maximum number of terms
+     * @param include regular expression restricting the terms, ignored if empty
+     * @param filterQuery filter query scoping the scan, ignored if null or empty
+     * @param deadline deadline for the scan, bounding each page request and checked between pages
+     * @return scan result with exact frequencies, marked as truncated
+     *         if the page limit is reached
+     * @throws TritonException on internal error or if the deadline expires
+     */
+    public ScanResult scan(String collection, String index, String term, boolean inclusive, int size,
+                           String include, String filterQuery, Deadline deadline) throws TritonException {
+        final List<ScanResult.Term> terms = new ArrayList<>(size);
+        int offset = 0;
+        for (int page = 0; page < maxPages; page++) {
+            if (deadline.isExpired()) {
+                throw new DeadlineExpiredException("Deadline expired while faceting on " + index);
+            }
+            final SolrQuery query = facetQuery(index, term, inclusive, size, offset, include, filterQuery)
+                    .setTimeAllowed(deadline.timeAllowedMillis());
+            final List<FacetField.Count> values = facetValues(collection, index, query, deadline);
+            for (FacetField.Count value : values) {
+                final int comparison = value.getName().compareTo(term);
+                if (comparison > 0 || comparison == 0 && inclusive) {
+                    terms.add(new ScanResult.Term(value.getName(), value.getCount()));
+                    if (terms.size() == size) {
+                        return new ScanResult(index, terms);
+                    }
+                }
+            }
+            if (values.size() < size) {
+                return new ScanResult(index, terms);
+            }
+            offset += size;
+        }
+        LOGGER.warn("Stopped faceting on {} from '{}' after {} pages with {} terms",
+                index, term, maxPages, terms.size());
+        final ScanResult scanResult = new ScanResult(index, terms);
+        scanResult.setTruncated(true);
+        return scanResult;
+    }
+
+    private List<FacetField.Count> facetValues(String collection, String index, SolrQuery query,
+                                               Deadline deadline) {
+        try {
+            final QueryResponse response = hedgedRequestBean.execute(collection,
+                    solrClientFactoryBean.getCloudSolrClient(), deadline,
+                    (solrClient, c) -> solrClient.query(c, query));
+            final FacetField facetField = response.getFacetField(index);
+            return facetField != null && facetField.getValues() != null ? facetField.getValues() : List.of();
+        } catch (IOException | SolrServerException e) {
+            throw new TritonException(e);
+        }
+    }
+
+    private SolrQuery facetQuery(String index, String term, boolean inclusive, int size, int offset,
+                                 String include, String filterQuery) {
+        final SolrQuery query = new SolrQuery("*:*")
+                .setRows(0)
+                .setFacet(true)
+                .addFacetField(index)
+                .setFacetSort(FacetParams.FACET_SORT_INDEX)
+                .setFacetLimit(size)
+                .setFacetMinCount(1);
+        query.set(FacetParams.FACET_OFFSET, offset);
+        query.addFilterQuery(String.format("%s:%s%s TO *]",
+                index, inclusive ? "[" : "{", ClientUtils.escapeQueryChars(term)));
+        if (filterQuery != null && !filterQuery.isEmpty()) {
+            query.addFilterQuery(filterQuery);
+        }
+        if (!include.isEmpty()) {
+            query.set(FacetParams.FACET_MATCHES, include);
+        }
+        return replicaRouterBean.preferFastReplicas(query);
+    }
+}
@@ -0,0 +1,126 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.health.Liveness;
+import org.eclipse.microprofile.health.Readiness;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Probes solr in the background and serves health checks from the result
+ * <p>
+ * The default collection is pinged every HEALTH_PROBE_INTERVAL_MS
+ * milliseconds. Readiness reports the result of the latest ping, and
+ * reports down if that result is older than HEALTH_PROBE_STALE_AFTER_MS
+ * milliseconds. Liveness only reports whether the prober itself is still
+ * running, so that an unreachable or slow solr does not get the service
+ * restarted.
+ * </p>
+ */
+@Startup
+@Singleton
+public class HealthProbeBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HealthProbeBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+
+    @Inject
+    @ConfigProperty(name = "HEALTH_PROBE_INTERVAL_MS", defaultValue = "5000")
+    long probeIntervalMs;
+
+    @Inject
+    @ConfigProperty(name = "HEALTH_PROBE_STALE_AFTER_MS", defaultValue = "30000")
+    long staleAfterMs;
+
+    @Resource TimerService timerService;
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile ProbeResult probeResult = null;
+    private volatile long lastTickNanos = System.nanoTime();
+
+    record ProbeResult(boolean up, String reason, long probedAtNanos) {}
+
+    @PostConstruct
+    public void initialize() {
+        final TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setPersistent(false);
+        timerService.createIntervalTimer(0, probeIntervalMs, timerConfig);
+    }
+
+    @Timeout
+    @Lock(READ)
+    public void probe() {
+        lastTickNanos = System.nanoTime();
+        // A ping still in progress is not overtaken by the next one
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final boolean up = solrClientFactoryBean.pingDefaultCollection();
+            probeResult = new ProbeResult(up, up ? null : "default collection not configured", System.nanoTime());
+        } catch (RuntimeException e) {
+            if (probeResult == null || probeResult.up()) {
+                LOGGER.warn("Solr health probe failed: {}", e.getMessage());
+            }
+            probeResult = new ProbeResult(false, e.getMessage(), System.nanoTime());
+        } finally {
+            probing.set(false);
+        }
+    }
+
+    @Produces
+    @Liveness
+    @Lock(READ)
+    public HealthCheck liveness() {
+        return () -> HealthCheckResponse.named("health-prober")
+                .status(ageMillis(lastTickNanos) <= staleAfterMs)
+                .build();
+    }
+
+    @Produces
+    @Readiness
+    @Lock(READ)
+    public HealthCheck readiness() {
+        return () -> {
+            final ProbeResult result = probeResult;
+            if (result == null) {
+                return HealthCheckResponse.named("ping-solr")
+                        .down()
+                        .withData("reason", "not probed yet")
+                        .build();
+            }
+            final long age = ageMillis(result.probedAtNanos());
+            final boolean stale = age > staleAfterMs;
+            final HealthCheckResponseBuilder builder = HealthCheckResponse.named("ping-solr")
+                    .status(result.up() && !stale)
+                    .withData("age_ms", age)
+                    .withData("stale", stale);
+            if (result.reason() != null) {
+                builder.withData("reason", result.reason());
+            }
+            return builder.build();
+        };
+    }
+
+    private static long ageMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - nanos);
+    }
+}
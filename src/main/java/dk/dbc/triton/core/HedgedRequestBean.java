@@ -0,0 +1,311 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Hedges solr requests against slow replicas
+ * <p>
+ * Unless hedging or replica routing is enabled, requests are sent through
+ * the given client, which picks the replica and fails over to another one
+ * if a node is unavailable. Otherwise each request is sent to an active
+ * replica of the collection, so that the node serving it is known and its
+ * response time is recorded by the {@link ReplicaRouterBean}. Requests are
+ * bounded by their timeAllowed, and the wait for an answer by the deadline
+ * of the request. When SOLR_HEDGE_ENABLED is set, a request
+ * not answered within the SOLR_HEDGE_PERCENTILE percentile of recent
+ * request latencies (though never sooner than SOLR_HEDGE_MIN_DELAY_MS
+ * milliseconds) is duplicated to an active replica on another node, and
+ * whichever request answers first wins. If the
+ * collection has no active replica on another node, the request is not
+ * hedged. Replicas are picked in the order ranked by the
+ * {@link ReplicaRouterBean} if replica routing is enabled, otherwise at
+ * random. The number of hedges issued and won are published as the
+ * metrics solr_hedges_issued and solr_hedges_won.
+ * </p>
+ */
+@ApplicationScoped
+public class HedgedRequestBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedRequestBean.class);
+    private static final int LATENCY_WINDOW = 1000;
+    private static final int LATENCY_MIN_SAMPLES = 100;
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Inject MetricRegistry metricRegistry;
+    @EJB ReplicaRouterBean replicaRouterBean;
+    @Resource ManagedExecutorService executorService;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HEDGE_ENABLED", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HEDGE_PERCENTILE", defaultValue = "95")
+    double percentile;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HEDGE_MIN_DELAY_MS", defaultValue = "50")
+    long minDelayMs;
+
+    Counter hedgesIssued;
+    Counter hedgesWon;
+
+    /* Ring buffer of the latencies of the most recent requests */
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+    private volatile long hedgeDelayNanos = -1;
+
+    /**
+     * Solr request to be executed against either the given
+     * client and collection, or a replica core client and null
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface SolrCall<T> {
+        T call(SolrClient solrClient, String collection) throws SolrServerException, IOException;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        hedgesIssued = metricRegistry.counter("solr_hedges_issued");
+        hedgesWon = metricRegistry.counter("solr_hedges_won");
+        if (enabled) {
+            LOGGER.info("Hedging solr requests at the {} percentile latency, at least {} ms",
+                    percentile, minDelayMs);
+        }
+    }
+
+    /**
+     * Executes solr request, hedging it if enabled
+     * @param collection solr collection
+     * @param solrClient client for the primary request
+     * @param deadline deadline of the request, bounding the wait for
+     *                 an answer
+     * @param solrCall the request
+     * @param <T> result type
+     * @return result of the first request to answer successfully
+     * @throws SolrServerException if all requests failed
+     * @throws IOException if all requests failed
+     * @throws DeadlineExpiredException if the deadline expires first
+     */
+    public <T> T execute(String collection, SolrClient solrClient, Deadline deadline, SolrCall<T> solrCall)
+            throws SolrServerException, IOException, DeadlineExpiredException {
+        if (deadline.isExpired()) {
+            throw new DeadlineExpiredException("Deadline expired before requesting solr");
+        }
+        if (!enabled && !replicaRouterBean.isEnabled()) {
+            // Neither hedging nor routing needs to know the replica,
+            // so the request is left to the client and its failover
+            try {
+                return solrCall.call(solrClient, collection);
+            } catch (SolrServerException | IOException e) {
+                if (deadline.isExpired()) {
+                    throw new DeadlineExpiredException("Deadline expired while waiting for solr", e);
+                }
+                throw e;
+            }
+        }
+        final List<String> coreUrls = solrClientFactoryBean.getLiveReplicaCoreUrls(collection);
+        final Optional<String> primaryCoreUrl = pickReplica(coreUrls, null);
+        if (primaryCoreUrl.isEmpty()) {
+            // No known replica to route to
+            return solrCall.call(solrClient, collection);
+        }
+        final String primaryBaseUrl = ReplicaRouterBean.baseUrlOf(primaryCoreUrl.get());
+        final SolrClient primaryClient = solrClientFactoryBean.getReplicaClient(primaryCoreUrl.get(), solrClient);
+        final long start = System.nanoTime();
+        if (!enabled) {
+            boolean answered = false;
+            try {
+                final T result = solrCall.call(primaryClient, null);
+                answered = true;
+                return result;
+            } catch (SolrException e) {
+                answered = true;
+                throw e;
+            } catch (SolrServerException | IOException e) {
+                if (deadline.isExpired()) {
+                    throw new DeadlineExpiredException("Deadline expired while waiting for solr", e);
+                }
+                throw e;
+            } finally {
+                replicaRouterBean.record(primaryBaseUrl, System.nanoTime() - start, answered);
+            }
+        }
+        final CompletableFuture<T> primary = supply(primaryClient, null, solrCall)
+                .whenComplete((result, e) -> {
+                    final long nanos = System.nanoTime() - start;
+                    if (e == null) {
+                        recordLatency(nanos);
+                    }
+                    replicaRouterBean.record(primaryBaseUrl, nanos, answered(e));
+                });
+        try {
+            return primary.get(Math.min(getHedgeDelayNanos(), remainingNanos(deadline)), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (deadline.isExpired()) {
+                throw new DeadlineExpiredException("Deadline expired while waiting for solr");
+            }
+            return await(hedge(coreUrls, primaryBaseUrl, solrClient, deadline, solrCall, primary), deadline);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TritonException(e);
+        }
+    }
+
+    /**
+     * @return number of nanoseconds to wait for an answer before hedging
+     */
+    long getHedgeDelayNanos() {
+        final long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        return Math.max(minDelayNanos, hedgeDelayNanos);
+    }
+
+    synchronized void recordLatency(long nanos) {
+        latencies[latencyIndex] = nanos;
+        latencyIndex = (latencyIndex + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_WINDOW);
+        // Sorting the window on every request would be wasteful,
+        // so the percentile is only recomputed now and then
+        if (latencyCount >= LATENCY_MIN_SAMPLES && latencyIndex % LATENCY_MIN_SAMPLES == 0) {
+            final long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            final int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            hedgeDelayNanos = sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+    }
+
+    /**
+     * @param coreUrls core URLs of the active replicas of a collection
+     * @param excludedBaseUrl base URL of a node whose replicas are not
+     *                        to be picked, or null
+     * @return core URL of the best ranked or a random active replica on
+     * a node other than the excluded one, or empty if none are available
+     */
+    Optional<String> pickReplica(List<String> coreUrls, String excludedBaseUrl) {
+        final List<String> candidates = coreUrls.stream()
+                .filter(coreUrl -> !ReplicaRouterBean.baseUrlOf(coreUrl).equals(excludedBaseUrl))
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return Optional.empty();
+        }
+        if (replicaRouterBean.isEnabled()) {
+            return Optional.of(replicaRouterBean.rank(candidates).get(0));
+        }
+        return Optional.of(candidates.get(ThreadLocalRandom.current().nextInt(candidates.size())));
+    }
+
+    private <T> CompletableFuture<T> hedge(List<String> coreUrls, String primaryBaseUrl, SolrClient solrClient,
+                                           Deadline deadline, SolrCall<T> solrCall, CompletableFuture<T> primary) {
+        final Optional<String> coreUrl = pickReplica(coreUrls, primaryBaseUrl);
+        if (coreUrl.isEmpty()) {
+            return primary;
+        }
+        hedgesIssued.inc();
+        LOGGER.debug("Hedging request to {} after {} ms", coreUrl.get(),
+                TimeUnit.NANOSECONDS.toMillis(getHedgeDelayNanos()));
+        final long start = System.nanoTime();
+        final SolrClient replicaClient = solrClientFactoryBean.getReplicaClient(coreUrl.get(), solrClient);
+        final CompletableFuture<T> hedged = supply(replicaClient, null, solrCall)
+                .whenComplete((result, e) -> replicaRouterBean.record(
+                        ReplicaRouterBean.baseUrlOf(coreUrl.get()), System.nanoTime() - start, answered(e)));
+        final CompletableFuture<T> first = new CompletableFuture<>();
+        primary.whenComplete((result, e) -> {
+            if (e == null) {
+                first.complete(result);
+            } else if (hedged.isCompletedExceptionally()) {
+                first.completeExceptionally(e);
+            }
+        });
+        hedged.whenComplete((result, e) -> {
+            if (e == null) {
+                if (first.complete(result)) {
+                    hedgesWon.inc();
+                }
+            } else if (primary.isCompletedExceptionally()) {
+                first.completeExceptionally(e);
+            }
+        });
+        return first;
+    }
+
+    private <T> CompletableFuture<T> supply(SolrClient solrClient, String collection, SolrCall<T> solrCall) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return solrCall.call(solrClient, collection);
+            } catch (SolrServerException | IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    /* Error responses from solr are answers, only failures
+       to get a response count against the node */
+    private static boolean answered(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e == null || e instanceof SolrException;
+    }
+
+    private static <T> T await(CompletableFuture<T> future, Deadline deadline)
+            throws SolrServerException, IOException {
+        try {
+            return future.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExpiredException("Deadline expired while waiting for solr");
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TritonException(e);
+        }
+    }
+
+    private static long remainingNanos(Deadline deadline) {
+        return TimeUnit.MILLISECONDS.toNanos(deadline.remainingMillis());
+    }
+
+    private static RuntimeException rethrow(Throwable e) throws SolrServerException, IOException {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof SolrServerException) {
+            throw (SolrServerException) e;
+        }
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new TritonException(e);
+    }
+}
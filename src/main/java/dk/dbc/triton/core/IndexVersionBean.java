@@ -0,0 +1,150 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Tracks index versions of solr collections
+ * <p>
+ * The version of a collection is a fingerprint of the index versions and
+ * generations reported by the replication handlers of its shards, taking
+ * for each shard the oldest generation among its active replicas. Since
+ * any of these replicas may serve a request, the version only changes
+ * once every replica has caught up with an index change, so entries
+ * cached from a lagging replica do not outlive the change.
+ * Collections are tracked from the first time their version is requested,
+ * after which their versions are refreshed in the background every
+ * INDEX_VERSION_POLL_INTERVAL_MS milliseconds.
+ * </p>
+ * <p>
+ * Caches keyed on the index version will therefore stop serving entries
+ * shortly after an index change becomes visible. If the version of a
+ * collection can not be determined, it is reported as empty.
+ * </p>
+ */
+@Startup
+@Singleton
+public class IndexVersionBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexVersionBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+
+    @Inject
+    @ConfigProperty(name = "INDEX_VERSION_POLL_INTERVAL_MS", defaultValue = "5000")
+    long pollIntervalMs;
+
+    @Resource TimerService timerService;
+
+    final Map<String, Optional<String>> versions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        final TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setPersistent(false);
+        timerService.createIntervalTimer(pollIntervalMs, pollIntervalMs, timerConfig);
+    }
+
+    /**
+     * Returns current index version of given collection
+     * @param collection solr collection (not an alias)
+     * @return index version or empty if version could not be determined
+     */
+    @Lock(READ)
+    public Optional<String> getVersion(String collection) {
+        Optional<String> version = versions.get(collection);
+        if (version == null) {
+            version = fetchVersion(collection);
+            versions.putIfAbsent(collection, version);
+        }
+        return version;
+    }
+
+    @Timeout
+    @Lock(READ)
+    public void refreshVersions() {
+        for (String collection : versions.keySet()) {
+            final Optional<String> version = fetchVersion(collection);
+            final Optional<String> previousVersion = versions.put(collection, version);
+            if (!version.equals(previousVersion)) {
+                LOGGER.info("Index version of {} changed from {} to {}",
+                        collection, previousVersion.orElse("unknown"), version.orElse("unknown"));
+            }
+        }
+    }
+
+    private Optional<String> fetchVersion(String collection) {
+        final DocCollection docCollection = solrClientFactoryBean.getCloudSolrClient().getZkStateReader()
+                .getClusterState().getCollectionOrNull(collection);
+        if (docCollection == null) {
+            return Optional.empty();
+        }
+        final ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("command", "indexversion");
+        final List<Slice> slices = docCollection.getActiveSlices().stream()
+                .sorted(Comparator.comparing(Slice::getName))
+                .collect(Collectors.toList());
+        final Set<String> liveNodes = solrClientFactoryBean.getCloudSolrClient().getZkStateReader()
+                .getClusterState().getLiveNodes();
+        final StringJoiner version = new StringJoiner(",");
+        try {
+            for (Slice slice : slices) {
+                NamedList<Object> oldest = null;
+                for (Replica replica : slice.getReplicas()) {
+                    if (replica.getState() != Replica.State.ACTIVE || !liveNodes.contains(replica.getNodeName())) {
+                        continue;
+                    }
+                    final NamedList<Object> response = solrClientFactoryBean.getReplicaClient(replica.getCoreUrl())
+                            .request(new GenericSolrRequest(SolrRequest.METHOD.GET, "/replication", params));
+                    if (oldest == null || generationOf(response) < generationOf(oldest)) {
+                        oldest = response;
+                    }
+                }
+                if (oldest == null) {
+                    return Optional.empty();
+                }
+                version.add(String.format("%s:%s/%s",
+                        slice.getName(), oldest.get("indexversion"), oldest.get("generation")));
+            }
+        } catch (IOException | SolrServerException | SolrException e) {
+            LOGGER.warn("Unable to determine index version of {}: {}", collection, e.getMessage());
+            return Optional.empty();
+        }
+        return Optional.of(version.toString());
+    }
+
+    private static long generationOf(NamedList<Object> response) {
+        final Object generation = response.get("generation");
+        return generation instanceof Number ? ((Number) generation).longValue() : Long.MIN_VALUE;
+    }
+}
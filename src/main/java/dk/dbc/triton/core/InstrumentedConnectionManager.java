@@ -0,0 +1,49 @@
+package dk.dbc.triton.core;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.microprofile.metrics.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooling connection manager recording the time spent waiting
+ * for a connection to be leased from the pool
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+    private final Timer leaseWaitTimer;
+
+    public InstrumentedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry, Timer leaseWaitTimer) {
+        super(socketFactoryRegistry);
+        this.leaseWaitTimer = leaseWaitTimer;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest connectionRequest = super.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                final long start = System.nanoTime();
+                try {
+                    return connectionRequest.get(timeout, timeUnit);
+                } finally {
+                    leaseWaitTimer.update(Duration.ofNanos(System.nanoTime() - start));
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+}
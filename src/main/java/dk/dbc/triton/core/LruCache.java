@@ -0,0 +1,122 @@
+package dk.dbc.triton.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe least-recently-used cache bounded by a total weight budget
+ * <p>
+ * The weight of each entry is determined by the weigher function given at
+ * construction time. When adding an entry causes the total weight to exceed
+ * the budget, least recently used entries are evicted until the cache is
+ * back within budget. A cache with a budget of zero (or less) is disabled
+ * and never stores anything.
+ * </p>
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long weight = 0;
+
+    /**
+     * @param maxWeight total weight budget
+     * @param weigher function calculating the weight of a single value
+     */
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Creates cache bounded by number of entries
+     * @param maxEntries maximum number of entries
+     */
+    public LruCache(long maxEntries) {
+        this(maxEntries, value -> 1);
+    }
+
+    public boolean isEnabled() {
+        return maxWeight > 0;
+    }
+
+    public Optional<V> get(K key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        final V value;
+        synchronized (entries) {
+            value = entries.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return Optional.ofNullable(value);
+    }
+
+    public void put(K key, V value) {
+        if (!isEnabled()) {
+            return;
+        }
+        final long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        synchronized (entries) {
+            final V replaced = entries.put(key, value);
+            if (replaced != null) {
+                weight -= weigher.applyAsLong(replaced);
+            }
+            weight += valueWeight;
+            final Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                final Map.Entry<K, V> eldest = iterator.next();
+                weight -= weigher.applyAsLong(eldest.getValue());
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,71 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.Optional;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Bounded in-process cache of terms normalized by field type analysis
+ * <p>
+ * Normalized terms are keyed on collection, field type and input term
+ * together with the configuration version of the collection as reported
+ * by {@link ConfigVersionBean}, so that cached terms are never served
+ * across schema or configuration changes. Least recently used terms are
+ * evicted when the number of cached terms exceeds NORMALIZATION_CACHE_SIZE.
+ * A size of zero disables the cache.
+ * </p>
+ */
+@Singleton
+public class NormalizationCacheBean {
+    @EJB ConfigVersionBean configVersionBean;
+    @Inject MetricRegistry metricRegistry;
+
+    @Inject
+    @ConfigProperty(name = "NORMALIZATION_CACHE_SIZE", defaultValue = "10000")
+    long maxSize;
+
+    LruCache<Key, String> cache;
+
+    @PostConstruct
+    public void initialize() {
+        cache = new LruCache<>(maxSize);
+        CacheMetrics.register(metricRegistry, "normalization", cache);
+    }
+
+    /**
+     * Creates cache key for a normalization request
+     * @param collection solr collection or collection alias
+     * @param fieldType field type on which analysis is performed
+     * @param term input term
+     * @return cache key or empty if the cache is disabled or
+     * the configuration version of the collection is unknown
+     */
+    @Lock(READ)
+    public Optional<Key> keyOf(String collection, String fieldType, String term) {
+        if (!cache.isEnabled()) {
+            return Optional.empty();
+        }
+        return configVersionBean.getVersion(collection)
+                .map(configVersion -> new Key(collection, configVersion, fieldType, term));
+    }
+
+    @Lock(READ)
+    public Optional<String> get(Key key) {
+        return cache.get(key);
+    }
+
+    @Lock(READ)
+    public void put(Key key, String normalizedTerm) {
+        cache.put(key, normalizedTerm);
+    }
+
+    public record Key(String collection, String configVersion, String fieldType, String term) {}
+}
@@ -0,0 +1,220 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.SolrPing;
+import org.apache.solr.common.params.ShardParams;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Routes solr requests preferentially to the fastest healthy replicas
+ * <p>
+ * An exponentially decayed latency score and error score is kept for each
+ * live solr node, fed by pinging a replica on every node each
+ * REPLICA_PROBE_INTERVAL_MS milliseconds, and by the response time of
+ * every request sent through the {@link HedgedRequestBean} and of the
+ * shard requests of the shards scan engine. When REPLICA_ROUTING_ENABLED
+ * is set, requests sent through the {@link HedgedRequestBean} go to the
+ * best ranked replica, their hedges go to the best ranked replica on
+ * another node, and requests are given a shards.preference listing the
+ * healthy nodes fastest first as of the latest probe, so that solr prefers
+ * replicas on those nodes for the requests it distributes to the other
+ * shards. Nodes whose
+ * error score reaches REPLICA_ERROR_THRESHOLD are considered unhealthy
+ * and ranked last.
+ * </p>
+ */
+@Startup
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ReplicaRouterBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRouterBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Resource TimerService timerService;
+
+    @Inject
+    @ConfigProperty(name = "REPLICA_ROUTING_ENABLED", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "REPLICA_PROBE_INTERVAL_MS", defaultValue = "5000")
+    long probeIntervalMs;
+
+    /* Weight of the most recent observation in the decayed scores */
+    @Inject
+    @ConfigProperty(name = "REPLICA_SCORE_DECAY", defaultValue = "0.2")
+    double decay;
+
+    @Inject
+    @ConfigProperty(name = "REPLICA_ERROR_THRESHOLD", defaultValue = "0.5")
+    double errorThreshold;
+
+    /* Node base URL => score */
+    final Map<String, ReplicaScore> scores = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private volatile String shardsPreference = null;
+
+    @PostConstruct
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        final TimerConfig timerConfig = new TimerConfig();
+        timerConfig.setPersistent(false);
+        timerService.createIntervalTimer(0, probeIntervalMs, timerConfig);
+        LOGGER.info("Routing solr requests by replica latency, probing every {} ms", probeIntervalMs);
+    }
+
+    @Timeout
+    public void probe() {
+        if (!probing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final Map<String, String> coreUrls = solrClientFactoryBean.getLiveNodeCoreUrls();
+            scores.keySet().retainAll(coreUrls.keySet());
+            coreUrls.forEach((baseUrl, coreUrl) -> {
+                final long start = System.nanoTime();
+                boolean success = true;
+                try {
+                    new SolrPing().process(solrClientFactoryBean.getReplicaClient(coreUrl));
+                } catch (SolrServerException | IOException | RuntimeException e) {
+                    LOGGER.debug("Unable to probe {}: {}", coreUrl, e.getMessage());
+                    success = false;
+                }
+                record(baseUrl, System.nanoTime() - start, success);
+            });
+            updateShardsPreference();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Replica probe failed: {}", e.getMessage());
+        } finally {
+            probing.set(false);
+        }
+    }
+
+    /**
+     * Records the outcome of a request sent to a node
+     * @param baseUrl base URL of the node
+     * @param nanos response time of the request
+     * @param success whether or not the request succeeded
+     */
+    public void record(String baseUrl, long nanos, boolean success) {
+        scores.computeIfAbsent(baseUrl, url -> new ReplicaScore()).update(nanos, success, decay);
+    }
+
+    /**
+     * Sets shards.preference on the given query, listing the
+     * healthy nodes fastest first, if routing is enabled
+     * @param query solr query
+     * @return the query
+     */
+    public SolrQuery preferFastReplicas(SolrQuery query) {
+        final String preference = shardsPreference;
+        if (enabled && preference != null) {
+            query.set(ShardParams.SHARDS_PREFERENCE, preference);
+        }
+        return query;
+    }
+
+    /**
+     * @param coreUrls replica core URLs
+     * @return the given core URLs ordered healthy nodes fastest first,
+     * then nodes without a score, then unhealthy nodes
+     */
+    public List<String> rank(List<String> coreUrls) {
+        final List<String> ranked = new ArrayList<>(coreUrls);
+        ranked.sort(Comparator.<String>comparingInt(coreUrl -> healthRank(scores.get(baseUrlOf(coreUrl))))
+                .thenComparingDouble(coreUrl -> latencyOf(scores.get(baseUrlOf(coreUrl)))));
+        return ranked;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param coreUrl replica core URL
+     * @return base URL of the node hosting the replica
+     */
+    public static String baseUrlOf(String coreUrl) {
+        final String url = coreUrl.endsWith("/") ? coreUrl.substring(0, coreUrl.length() - 1) : coreUrl;
+        final int lastSlash = url.lastIndexOf('/');
+        return lastSlash > 0 ? url.substring(0, lastSlash) : url;
+    }
+
+    String getShardsPreference() {
+        return shardsPreference;
+    }
+
+    /* Called by each probe rather than for every recorded response */
+    void updateShardsPreference() {
+        final String preference = scores.entrySet().stream()
+                .filter(entry -> entry.getValue().isHealthy(errorThreshold))
+                .sorted(Comparator.comparingDouble(entry -> entry.getValue().getLatencyMillis()))
+                .map(entry -> ShardParams.SHARDS_PREFERENCE_REPLICA_LOCATION + ":" + entry.getKey())
+                .collect(Collectors.joining(","));
+        shardsPreference = preference.isEmpty() ? null : preference;
+    }
+
+    private int healthRank(ReplicaScore score) {
+        if (score == null) {
+            return 1;
+        }
+        return score.isHealthy(errorThreshold) ? 0 : 2;
+    }
+
+    private static double latencyOf(ReplicaScore score) {
+        return score == null ? 0 : score.getLatencyMillis();
+    }
+
+    /**
+     * Exponentially decayed latency and error scores of a node
+     */
+    static class ReplicaScore {
+        private double latencyMillis = -1;
+        private double errorScore = 0;
+
+        synchronized void update(long nanos, boolean success, double decay) {
+            errorScore = decay * (success ? 0 : 1) + (1 - decay) * errorScore;
+            if (success) {
+                final double millis = nanos / 1_000_000.0;
+                latencyMillis = latencyMillis < 0 ? millis : decay * millis + (1 - decay) * latencyMillis;
+            }
+        }
+
+        synchronized double getLatencyMillis() {
+            return latencyMillis < 0 ? Double.MAX_VALUE : latencyMillis;
+        }
+
+        synchronized double getErrorScore() {
+            return errorScore;
+        }
+
+        synchronized boolean isHealthy(double errorThreshold) {
+            return latencyMillis >= 0 && errorScore < errorThreshold;
+        }
+    }
+}
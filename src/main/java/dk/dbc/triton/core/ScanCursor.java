@@ -0,0 +1,101 @@
+package dk.dbc.triton.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Position from which to continue a scan
+ * <p>
+ * Cursors are passed to clients as opaque URL safe tokens carrying the
+ * collection and the resolved index, so that following a cursor needs
+ * neither index alias resolution nor term normalization. Since the solr
+ * terms component only scans forward, every cursor scans forward from its
+ * bound. To allow paging backward, a cursor also carries the bounds of
+ * the pages preceding it, up to {@link #MAX_HISTORY} of them, the last
+ * being the bound of the previous page.
+ * </p>
+ * @param collection solr collection
+ * @param index resolved index field
+ * @param bound bound from which the page of the cursor is scanned
+ * @param history bounds of the preceding pages in index order
+ */
+public record ScanCursor(String collection, String index, Bound bound, List<Bound> history) {
+    public static final int MAX_HISTORY = 20;
+
+    private static final String SEPARATOR = "\u0000";
+    private static final char INCLUSIVE = '[';
+    private static final char EXCLUSIVE = '(';
+
+    /**
+     * @param term term from which to scan
+     * @param inclusive whether or not the term itself is included
+     */
+    public record Bound(String term, boolean inclusive) {
+        String encode() {
+            return (inclusive ? INCLUSIVE : EXCLUSIVE) + term;
+        }
+
+        static Bound decode(String s) throws IllegalArgumentException {
+            if (s.isEmpty() || (s.charAt(0) != INCLUSIVE && s.charAt(0) != EXCLUSIVE)) {
+                throw new IllegalArgumentException("Malformed scan cursor");
+            }
+            return new Bound(s.substring(1), s.charAt(0) == INCLUSIVE);
+        }
+    }
+
+    /**
+     * @param lastTerm last term of the page scanned from this cursor
+     * @return cursor of the page following the page of this cursor
+     */
+    public ScanCursor next(String lastTerm) {
+        final List<Bound> nextHistory = new ArrayList<>(history);
+        nextHistory.add(bound);
+        while (nextHistory.size() > MAX_HISTORY) {
+            nextHistory.remove(0);
+        }
+        return new ScanCursor(collection, index, new Bound(lastTerm, false), List.copyOf(nextHistory));
+    }
+
+    /**
+     * @return cursor of the page preceding the page of this cursor,
+     * or empty if its bound is not known
+     */
+    public Optional<ScanCursor> previous() {
+        if (history.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new ScanCursor(collection, index, history.get(history.size() - 1),
+                List.copyOf(history.subList(0, history.size() - 1))));
+    }
+
+    public String encode() {
+        final List<String> parts = new ArrayList<>(history.size() + 3);
+        parts.add(collection);
+        parts.add(index);
+        parts.add(bound.encode());
+        history.forEach(previousBound -> parts.add(previousBound.encode()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                String.join(SEPARATOR, parts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token token created by {@link #encode()}
+     * @return decoded cursor
+     * @throws IllegalArgumentException on malformed token
+     */
+    public static ScanCursor decode(String token) throws IllegalArgumentException {
+        final String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                .split(SEPARATOR, -1);
+        if (parts.length < 3 || parts.length > MAX_HISTORY + 3) {
+            throw new IllegalArgumentException("Malformed scan cursor");
+        }
+        final List<Bound> history = new ArrayList<>(parts.length - 3);
+        for (int i = 3; i < parts.length; i++) {
+            history.add(Bound.decode(parts[i]));
+        }
+        return new ScanCursor(parts[0], parts[1], Bound.decode(parts[2]), List.copyOf(history));
+    }
+}
@@ -0,0 +1,26 @@
+package dk.dbc.triton.core;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * How the index is scanned
+ * <p>
+ * TERMS sends a single distributed terms request to the collection,
+ * SHARDS sends shard-local terms requests to a replica of each shard in
+ * parallel and merges the results in triton, FACET facets on the index
+ * field returning exact frequencies of live documents in a single request.
+ * </p>
+ */
+public enum ScanEngine {
+    TERMS,
+    SHARDS,
+    FACET;
+
+    @JsonCreator
+    public static ScanEngine fromString(String s) {
+        if (s == null) {
+            throw new IllegalArgumentException("String cannot be null");
+        }
+        return ScanEngine.valueOf(s.toUpperCase());
+    }
+}
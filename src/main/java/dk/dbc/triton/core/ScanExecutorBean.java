@@ -0,0 +1,156 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Dedicated executor for solr requests fanned out by scans
+ * <p>
+ * Tasks run on a pool of SCAN_EXECUTOR_THREADS threads. At most
+ * SCAN_EXECUTOR_QUEUE_SIZE tasks may be waiting for a thread, bounding the
+ * total number of tasks in flight; tasks submitted beyond that are failed
+ * with a {@link TritonException}. Tasks submitted together through
+ * {@link #submitAll(List)} run at most SCAN_REQUEST_CONCURRENCY at a time,
+ * so that a single large scan can not monopolize the pool.
+ * </p>
+ */
+@Singleton
+public class ScanExecutorBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScanExecutorBean.class);
+
+    @Resource ManagedThreadFactory threadFactory;
+    @Inject MetricRegistry metricRegistry;
+
+    @Inject
+    @ConfigProperty(name = "SCAN_EXECUTOR_THREADS", defaultValue = "32")
+    int threads;
+
+    @Inject
+    @ConfigProperty(name = "SCAN_EXECUTOR_QUEUE_SIZE", defaultValue = "1000")
+    int queueSize;
+
+    @Inject
+    @ConfigProperty(name = "SCAN_REQUEST_CONCURRENCY", defaultValue = "4")
+    int requestConcurrency;
+
+    ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void initialize() {
+        executor = createExecutor(threadFactory);
+        LOGGER.info("Scan executor started with {} threads, queue size {} and request concurrency {}",
+                threads, queueSize, requestConcurrency);
+        metricRegistry.gauge("scan_executor_queue_depth", executor, e -> e.getQueue().size());
+        metricRegistry.gauge("scan_executor_active_tasks", executor, ThreadPoolExecutor::getActiveCount);
+        metricRegistry.gauge("scan_executor_completed_tasks", executor, ThreadPoolExecutor::getCompletedTaskCount);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs given task on the executor
+     * @param task task to run
+     * @param <T> result type
+     * @return future completed with the result of the task, or exceptionally
+     * if the task fails or the executor is saturated
+     */
+    @Lock(READ)
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(task.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new TritonException("Scan executor saturated", e));
+        }
+        return future;
+    }
+
+    /**
+     * Runs given tasks on the executor with at most SCAN_REQUEST_CONCURRENCY
+     * tasks running at the same time. Tasks are started in list order.
+     * Cancelling a returned future prevents its task from starting if it
+     * has not already done so.
+     * @param tasks tasks to run
+     * @param <T> result type
+     * @return list of futures in the same order as the given tasks
+     */
+    @Lock(READ)
+    public <T> List<CompletableFuture<T>> submitAll(List<Supplier<T>> tasks) {
+        final List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable startNext = new Runnable() {
+            @Override
+            public void run() {
+                final int i = next.getAndIncrement();
+                if (i >= tasks.size()) {
+                    return;
+                }
+                final CompletableFuture<T> result = futures.get(i);
+                if (result.isDone()) {
+                    // cancelled before being started
+                    run();
+                    return;
+                }
+                final CompletableFuture<T> submitted = submit(tasks.get(i));
+                // cancelling the result releases the task if still queued
+                result.whenComplete((value, e) -> submitted.cancel(false));
+                submitted.whenComplete((value, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(value);
+                    }
+                    run();
+                });
+            }
+        };
+        for (int i = 0; i < Math.max(1, requestConcurrency); i++) {
+            startNext.run();
+        }
+        return futures;
+    }
+
+    ThreadPoolExecutor createExecutor(ThreadFactory threadFactory) {
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory);
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+}
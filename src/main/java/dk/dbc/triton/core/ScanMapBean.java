@@ -1,29 +1,43 @@
 package dk.dbc.triton.core;
 
-import org.apache.solr.common.cloud.Aliases;
-import org.apache.solr.common.cloud.DocCollection;
-import org.apache.solr.common.cloud.Replica;
-import org.apache.solr.common.cloud.Slice;
+import org.apache.solr.common.cloud.SolrZkClient;
+import org.apache.solr.common.cloud.ZkConfigManager;
 import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
-import jakarta.ejb.Lock;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
-
-import static jakarta.ejb.LockType.READ;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Resolves scan index names from aliases
@@ -31,42 +45,115 @@ import static jakarta.ejb.LockType.READ;
  * Loads map (if present) for each collection in the cluster at startup from
  * the file /configs/{configName}/scanMap.txt in the zookeeper. The
  * content of scanMap.txt must be a well-formed Java property file
+ * in ISO-8859-1 encoding, other characters written as unicode escapes
  * (precise semantics described here:
- * https://docs.oracle.com/javase/8/docs/api/java/util/Properties.html#load-java.io.Reader-)
+ * https://docs.oracle.com/javase/8/docs/api/java/util/Properties.html#load-java.io.InputStream-)
+ * </p>
+ * <p>
+ * Entries of the form engine.{index}={engine} select the {@link ScanEngine}
+ * used for scanning the index when the request does not name one.
+ * </p>
+ * <p>
+ * Zookeeper watches on the scan map files, on the collection aliases and
+ * on the set of collections keep the maps up to date without redeploying.
+ * On any change a new immutable snapshot mapping collections and
+ * collection aliases to scan maps is built and swapped in atomically,
+ * so resolving is never blocked.
+ * </p>
+ * <p>
+ * Scan maps are loaded in the background at startup, reading the maps of
+ * all collections in parallel with a timeout per read, and the bean
+ * reports itself ready once done. The set of collections is watched
+ * from then on. Collections not yet loaded when first
+ * resolved, or all collections if eager loading is disabled, are loaded
+ * on first use. Concurrent first uses of a collection share a single load,
+ * waiting at most the fetch timeout for it, and a failed load is retried
+ * on the next use.
  * </p>
  */
 @Startup
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class ScanMapBean {
     private static final Logger LOGGER = LoggerFactory.getLogger(ScanMapBean.class);
     private static final String SCAN_MAP_FILE = "scanMap.txt";
+    private static final String ENGINE_PREFIX = "engine.";
 
     @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Resource ManagedExecutorService executorService;
+
+    /* Whether or not to load scan maps of all collections at startup */
+    @Inject
+    @ConfigProperty(name = "SCAN_MAP_EAGER_LOADING", defaultValue = "true")
+    boolean eagerLoading;
+
+    /* Timeout in milliseconds for loading the scan map of a single collection */
+    @Inject
+    @ConfigProperty(name = "SCAN_MAP_FETCH_TIMEOUT_MS", defaultValue = "5000")
+    long fetchTimeoutMs;
+
+    /* Set when eager loading of all collections has completed */
+    volatile boolean loaded = false;
 
-    Map<String, Properties> collectionProperties = new HashMap<>();
+    /* Collection or collection alias => index alias => index */
+    final AtomicReference<Map<String, Map<String, String>>> snapshot = new AtomicReference<>(Map.of());
+
+    /* Config name => index alias => index */
+    private final Map<String, Map<String, String>> scanMaps = new ConcurrentHashMap<>();
+    private final Map<String, String> configNames = new ConcurrentHashMap<>();
+    /* Collection => load on first use, completed or in progress */
+    private final Map<String, CompletableFuture<Void>> lazyLoads = new ConcurrentHashMap<>();
 
     @PostConstruct
     public void initialize() {
-        final ZkStateReader clusterStateReader = solrClientFactoryBean.getCloudSolrClient().getZkStateReader();
-        final Aliases aliases = clusterStateReader.getAliases();
-        final Map<String, String> collectionAliasMap = aliases.getCollectionAliasMap();
-        LOGGER.info("Known aliases: {}", collectionAliasMap);
-        for (String collection : clusterStateReader.getClusterState().getCollectionsMap().keySet()) {
-            final Optional<String> scanMapUrl = getScanMapUrl(collection);
-            if (scanMapUrl.isPresent()) {
-                final Optional<Properties> scanMap = fetchScanMap(scanMapUrl.get());
-                if (scanMap.isPresent()) {
-                    collectionProperties.put(collection, scanMap.get());
-                    LOGGER.info("Fetched {} for {}", SCAN_MAP_FILE, collection);
-                    collectionAliasMap.forEach((alias, name) -> {
-                        if (collection.equals(name)) {
-                            collectionProperties.put(alias, scanMap.get());
-                            LOGGER.info("Stored {} for alias {} as copy of {}", SCAN_MAP_FILE, alias, collection);
-                        }
-                    });
+        final long start = System.nanoTime();
+        watchAliases();
+        LOGGER.info("Registered scan map watches in {} ms", elapsedMillis(start));
+        executorService.execute(() -> {
+            try {
+                if (eagerLoading) {
+                    final long loadStart = System.nanoTime();
+                    final Set<String> collections =
+                            getZkStateReader().getClusterState().getCollectionsMap().keySet();
+                    loadCollections(collections);
+                    publish();
+                    loaded = true;
+                    LOGGER.info("Loaded scan maps of {} collections in {} ms",
+                            collections.size(), elapsedMillis(loadStart));
                 }
+            } finally {
+                // The listener is called at once with all current collections
+                // on the registering thread, so it is registered here, picking
+                // up collections created while loading
+                getZkStateReader().registerCloudCollectionsListener(this::collectionsChanged);
             }
-        }
+        });
+    }
+
+    /* Called on the zookeeper event thread, so the scan maps of
+       added collections are loaded in the background */
+    private void collectionsChanged(Set<String> oldCollections, Set<String> newCollections) {
+        final Set<String> addedCollections = new HashSet<>(newCollections);
+        addedCollections.removeAll(oldCollections);
+        executorService.execute(() -> {
+            try {
+                if (eagerLoading) {
+                    loadCollections(addedCollections);
+                }
+                publish();
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to update scan maps of collections {}", addedCollections, e);
+            }
+        });
+    }
+
+    /**
+     * @return readiness check reporting up once scan maps have been loaded
+     */
+    @Produces
+    @Readiness
+    public HealthCheck scanMapsLoaded() {
+        return () -> HealthCheckResponse.named("scan-maps-loaded").status(!eagerLoading || loaded).build();
     }
 
     /**
@@ -75,48 +162,210 @@ public class ScanMapBean {
      * @param indexAlias index alias
      * @return mapped value or original value if no mapping exists
      */
-    @Lock(READ)
     public String resolve(String collection, String indexAlias) {
-        if (!collectionProperties.containsKey(collection)) {
+        final Map<String, String> scanMap = getScanMap(collection);
+        if (scanMap == null) {
             return indexAlias;
         }
-        return collectionProperties.get(collection).getProperty(indexAlias, indexAlias);
-    }
-
-    /* Returns the scan map URL for the given collection
-       or empty if no shard URL could be determined */
-    private Optional<String> getScanMapUrl(String collection) {
-        final ZkStateReader zkStateReader = solrClientFactoryBean.getCloudSolrClient()
-                .getZkStateReader();
-        final DocCollection docCollection = zkStateReader.getClusterState()
-                .getCollectionOrNull(collection);
-        if (docCollection != null) {
-            for (Slice slice : docCollection.getSlices()) {
-                for (Replica replica : slice.getReplicas()) {
-                    if (replica.getState() == Replica.State.ACTIVE) {
-                        return Optional.of(replica.getCoreUrl()
-                                + "admin/file?wt=json&file=scanMap.txt&contentType=text%2Fplain%3Bcharset%3Dutf-8");
-                    }
-                }
+        return scanMap.getOrDefault(indexAlias, indexAlias);
+    }
+
+    /**
+     * Looks up the scan engine configured for an index of a specific
+     * collection by an engine.{index}={engine} entry in its scan map
+     * @param collection solr collection
+     * @param index resolved index
+     * @return configured engine or empty if none is configured
+     */
+    public Optional<ScanEngine> engineOf(String collection, String index) {
+        final Map<String, String> scanMap = getScanMap(collection);
+        if (scanMap == null || !scanMap.containsKey(ENGINE_PREFIX + index)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(ScanEngine.fromString(scanMap.get(ENGINE_PREFIX + index)));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Unknown scan engine {} configured for {} in {}",
+                    scanMap.get(ENGINE_PREFIX + index), index, collection);
+            return Optional.empty();
+        }
+    }
+
+    /* Returns the scan map of the given collection, loading it first
+       if not yet loaded */
+    private Map<String, String> getScanMap(String collection) {
+        Map<String, String> scanMap = snapshot.get().get(collection);
+        if (scanMap == null && !loaded) {
+            loadLazily(collection);
+            scanMap = snapshot.get().get(collection);
+        }
+        return scanMap;
+    }
+
+    /* Loads the scan map of the given collection unless already loaded,
+       or waits for a load in progress by a concurrent caller */
+    private void loadLazily(String collection) {
+        final CompletableFuture<Void> load = new CompletableFuture<>();
+        final CompletableFuture<Void> existingLoad = lazyLoads.putIfAbsent(collection, load);
+        if (existingLoad != null) {
+            awaitLoad(collection, existingLoad);
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            loadCollection(solrClientFactoryBean.resolveCollectionAlias(collection));
+            publish();
+            load.complete(null);
+            LOGGER.info("Loaded scan map of {} on first use in {} ms", collection, elapsedMillis(start));
+        } catch (RuntimeException e) {
+            // Allow the next caller to retry
+            lazyLoads.remove(collection, load);
+            load.completeExceptionally(e);
+            LOGGER.warn("Unable to load {} for {}: {}", SCAN_MAP_FILE, collection, e.getMessage());
+        }
+    }
+
+    private void awaitLoad(String collection, CompletableFuture<Void> load) {
+        try {
+            load.get(fetchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            LOGGER.warn("Scan map of {} not available: {}", collection, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* Loads the scan maps of the given collections in parallel, giving
+       up on collections not loaded within the fetch timeout */
+    private void loadCollections(Collection<String> collections) {
+        final List<CompletableFuture<Void>> loads = new ArrayList<>(collections.size());
+        for (String collection : collections) {
+            loads.add(CompletableFuture.runAsync(() -> loadCollection(collection), executorService)
+                    .orTimeout(fetchTimeoutMs, TimeUnit.MILLISECONDS)
+                    .exceptionally(e -> {
+                        LOGGER.warn("Unable to load {} for {}: {}", SCAN_MAP_FILE, collection, e.toString());
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void loadCollection(String collection) {
+        final String configName = getConfigName(getZkStateReader(), collection);
+        if (!scanMaps.containsKey(configName)) {
+            loadScanMap(configName);
+        }
+    }
+
+    /* Builds and swaps in a new snapshot from the current collections,
+       aliases and loaded scan maps */
+    private synchronized void publish() {
+        final ZkStateReader zkStateReader = getZkStateReader();
+        final Map<String, Map<String, String>> collectionScanMaps = new HashMap<>();
+        for (String collection : zkStateReader.getClusterState().getCollectionsMap().keySet()) {
+            final String configName = configNames.get(collection);
+            final Map<String, String> scanMap = configName != null ? scanMaps.get(configName) : null;
+            if (scanMap != null && !scanMap.isEmpty()) {
+                collectionScanMaps.put(collection, scanMap);
             }
         }
-        return Optional.empty();
+        final Map<String, String> collectionAliasMap = zkStateReader.getAliases().getCollectionAliasMap();
+        LOGGER.info("Known aliases: {}", collectionAliasMap);
+        collectionAliasMap.forEach((alias, name) -> {
+            final Map<String, String> scanMap = collectionScanMaps.get(name);
+            if (scanMap != null) {
+                collectionScanMaps.put(alias, scanMap);
+            }
+        });
+        snapshot.set(Map.copyOf(collectionScanMaps));
+        LOGGER.info("Scan maps in use for {}", collectionScanMaps.keySet());
     }
 
-    /* Returns scan map located at given URL
-       or empty if no scan map could be found */
-    private Optional<Properties> fetchScanMap(String url) {
+    private String getConfigName(ZkStateReader zkStateReader, String collection) {
+        String configName = configNames.get(collection);
+        if (configName == null) {
+            try {
+                configName = zkStateReader.readConfigName(collection);
+            } catch (KeeperException e) {
+                throw new TritonException(e);
+            }
+            configNames.put(collection, configName);
+        }
+        return configName;
+    }
+
+    /* Reads the scan map of the given config while watching it for changes */
+    private void loadScanMap(String configName) {
+        final String path = ZkConfigManager.CONFIGS_ZKNODE + "/" + configName + "/" + SCAN_MAP_FILE;
+        final Watcher watcher = event -> {
+            if (event.getType() != Watcher.Event.EventType.None) {
+                LOGGER.info("{} changed ({} on {})", SCAN_MAP_FILE, event.getType(), event.getPath());
+                try {
+                    loadScanMap(configName);
+                    publish();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unable to reload {} for config {}", SCAN_MAP_FILE, configName, e);
+                }
+            }
+        };
+        final SolrZkClient zkClient = getZkStateReader().getZkClient();
         try {
-            final URLConnection urlConnection = new URL(url).openConnection();
-            try (InputStream inputStream = urlConnection.getInputStream()) {
-                final Properties properties = new Properties();
-                properties.load(inputStream);
-                return Optional.of(properties);
+            final byte[] data = zkClient.getData(path, watcher, null, true);
+            final Properties properties = new Properties();
+            if (data != null) {
+                properties.load(new ByteArrayInputStream(data));
             }
-        } catch (FileNotFoundException e) {
-            return Optional.empty();
-        } catch (IOException e) {
+            final Map<String, String> scanMap = new HashMap<>();
+            properties.stringPropertyNames().forEach(name -> scanMap.put(name, properties.getProperty(name)));
+            scanMaps.put(configName, Map.copyOf(scanMap));
+            LOGGER.info("Loaded {} for config {}", SCAN_MAP_FILE, configName);
+        } catch (KeeperException.NoNodeException e) {
+            // Watch for the scan map being created
+            scanMaps.put(configName, Map.of());
+            try {
+                if (zkClient.exists(path, watcher, true) != null) {
+                    loadScanMap(configName);
+                }
+            } catch (KeeperException ke) {
+                throw new TritonException(ke);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (KeeperException | IOException e) {
+            throw new TritonException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watchAliases() {
+        try {
+            getZkStateReader().getZkClient().exists(ZkStateReader.ALIASES, event -> {
+                if (event.getType() != Watcher.Event.EventType.None) {
+                    LOGGER.info("Collection aliases changed");
+                    try {
+                        watchAliases();
+                        getZkStateReader().aliasesManager.update();
+                        publish();
+                    } catch (KeeperException | RuntimeException e) {
+                        LOGGER.error("Unable to reload collection aliases", e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, true);
+        } catch (KeeperException e) {
             throw new TritonException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private ZkStateReader getZkStateReader() {
+        return solrClientFactoryBean.getCloudSolrClient().getZkStateReader();
+    }
 }
@@ -1,9 +1,12 @@
 package dk.dbc.triton.core;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+
 public enum ScanPos {
     FIRST,
     LAST;
 
+    @JsonCreator
     public static ScanPos fromString(String s) {
         if (s == null) {
             throw new IllegalArgumentException("String cannot be null");
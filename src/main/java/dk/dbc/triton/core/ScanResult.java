@@ -4,10 +4,12 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import org.apache.solr.client.solrj.response.TermsResponse;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -59,6 +61,32 @@ import java.util.stream.Collectors;
  * }
  * }
  * </pre>
+ *
+ * <p>
+ * Terms whose exact frequency could not be determined within the deadline
+ * of the scan additionally carry an exact element (or property) with the
+ * value false.
+ * </p>
+ *
+ * <p>
+ * Results of scanning a single index carry next and previous elements (or
+ * properties) holding {@link ScanCursor} tokens from which the scan can be
+ * continued with the following and the preceding page. The next token is
+ * only present when the result is full, the previous token only when the
+ * result was reached by paging forward from a pos first scan.
+ * </p>
+ *
+ * <p>
+ * Partial results of scanning shard by shard while tolerating failing
+ * shards carry a missingShards element (or property) listing the shards
+ * whose terms are missing.
+ * </p>
+ *
+ * <p>
+ * Results of the facet engine cut short by its page limit before finding
+ * the requested number of terms carry a truncated element (or property)
+ * with the value true, and a next token if any terms were found.
+ * </p>
  */
 public class ScanResult {
     public static final ScanResult EMPTY = new ScanResult(null, Collections.emptyList());
@@ -67,21 +95,68 @@ public class ScanResult {
     @JacksonXmlElementWrapper(localName = "terms")
     @JacksonXmlProperty(localName = "term")
     private List<Term> terms;
+    private String next;
+    private String previous;
+    @JacksonXmlElementWrapper(localName = "missingShards")
+    @JacksonXmlProperty(localName = "shard")
+    private List<String> missingShards;
+    private Boolean truncated;
 
-    public static ScanResult of(TermsResponse termsResponse) {
-        final Map<String, List<TermsResponse.Term>> termsMap = termsResponse.getTermMap();
-        if (termsMap.size() > 1) {
-            throw new IllegalArgumentException("Multiple indexes in TermsResponse");
-        }
-        if (termsMap.isEmpty()) {
-           return EMPTY;
+    /**
+     * Extracts the terms of a single index from a (possibly multi-field)
+     * terms response
+     * @param termsResponse solr terms response
+     * @param index index field
+     * @return scan result for index, with no terms if the response
+     * contains none for the index
+     */
+    public static ScanResult of(TermsResponse termsResponse, String index) {
+        final List<TermsResponse.Term> solrTerms = termsResponse != null ? termsResponse.getTerms(index) : null;
+        if (solrTerms == null) {
+            return new ScanResult(index, Collections.emptyList());
         }
-        final Map.Entry<String, List<TermsResponse.Term>> entry = termsMap.entrySet().iterator().next();
-        return new ScanResult(entry.getKey(), entry.getValue().stream()
+        return new ScanResult(index, solrTerms.stream()
                                 .map(Term::of)
                                 .collect(Collectors.toList()));
     }
 
+    /**
+     * Merges the results of scanning several indexes into a single result
+     * whose index is the comma separated list of the merged indexes.
+     * Frequencies of terms found in more than one index are summed.
+     * <p>
+     * Since the terms component only scans forward, every index result
+     * holds the first terms of its index from or up to the term, so the
+     * first terms of the merged indexes are kept for any scan position.
+     * </p>
+     * @param scanResults results to merge
+     * @param size maximum number of terms to keep
+     * @return merged scan result
+     */
+    public static ScanResult merge(List<ScanResult> scanResults, int size) {
+        final TreeMap<String, Term> merged = new TreeMap<>();
+        for (ScanResult scanResult : scanResults) {
+            for (Term term : scanResult.getTerms()) {
+                final Term copy = new Term(term.getValue(), term.getFrequency());
+                copy.setExact(term.getExact());
+                merged.merge(term.getValue(), copy, (a, b) -> {
+                    a.setFrequency(a.getFrequency() + b.getFrequency());
+                    if (Boolean.FALSE.equals(b.getExact())) {
+                        a.setExact(false);
+                    }
+                    return a;
+                });
+            }
+        }
+        List<Term> terms = new ArrayList<>(merged.values());
+        if (terms.size() > size) {
+            terms = terms.subList(0, size);
+        }
+        return new ScanResult(scanResults.stream()
+                .map(ScanResult::getIndex)
+                .collect(Collectors.joining(",")), new ArrayList<>(terms));
+    }
+
     ScanResult(String index, List<Term> terms) {
         this.index = index;
         this.terms = terms;
@@ -95,6 +170,46 @@ public class ScanResult {
         return terms;
     }
 
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    public String getPrevious() {
+        return previous;
+    }
+
+    public void setPrevious(String previous) {
+        this.previous = previous;
+    }
+
+    /**
+     * @return names of the shards left out of a partial shard by shard
+     * scan, otherwise null
+     */
+    public List<String> getMissingShards() {
+        return missingShards;
+    }
+
+    public void setMissingShards(List<String> missingShards) {
+        this.missingShards = missingShards;
+    }
+
+    /**
+     * @return true if the scan stopped before finding all the terms
+     * requested, which may follow the terms found, otherwise null
+     */
+    public Boolean getTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(Boolean truncated) {
+        this.truncated = truncated;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -105,17 +220,22 @@ public class ScanResult {
         }
         ScanResult that = (ScanResult) o;
         return Objects.equals(index, that.index) &&
-                Objects.equals(terms, that.terms);
+                Objects.equals(terms, that.terms) &&
+                Objects.equals(next, that.next) &&
+                Objects.equals(previous, that.previous) &&
+                Objects.equals(missingShards, that.missingShards) &&
+                Objects.equals(truncated, that.truncated);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(index, terms);
+        return Objects.hash(index, terms, next, previous, missingShards, truncated);
     }
 
     public static class Term {
         private final String value;
         private long frequency;
+        private Boolean exact;
 
         public static Term of(TermsResponse.Term solrTerm) {
             return new Term(solrTerm.getTerm(), solrTerm.getFrequency());
@@ -138,6 +258,19 @@ public class ScanResult {
             this.frequency = frequency;
         }
 
+        /**
+         * @return false if exact frequency was requested but could not be
+         * determined in time, leaving the frequency reported by the index
+         * scan which may include deleted documents, otherwise null
+         */
+        public Boolean getExact() {
+            return exact;
+        }
+
+        public void setExact(Boolean exact) {
+            this.exact = exact;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
@@ -148,13 +281,14 @@ public class ScanResult {
             }
             Term term = (Term) o;
             return frequency == term.frequency &&
-                    Objects.equals(value, term.value);
+                    Objects.equals(value, term.value) &&
+                    Objects.equals(exact, term.exact);
         }
 
         @Override
         public int hashCode() {
 
-            return Objects.hash(value, frequency);
+            return Objects.hash(value, frequency, exact);
         }
 
         @Override
@@ -162,6 +296,7 @@ public class ScanResult {
             return "Term{" +
                     "value='" + value + '\'' +
                     ", frequency=" + frequency +
+                    ", exact=" + exact +
                     '}';
         }
     }
@@ -0,0 +1,85 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.Optional;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Bounded in-process cache of scan results
+ * <p>
+ * Results are keyed on the resolved collection and index, the normalized
+ * term and the remaining scan parameters together with the current index
+ * version of the collection as reported by {@link IndexVersionBean}, so
+ * that cached results are never served across index changes. Least
+ * recently used results are evicted when the total weight (number of terms
+ * plus one per result) exceeds SCAN_RESULT_CACHE_WEIGHT. A weight of zero
+ * disables the cache.
+ * </p>
+ */
+@Singleton
+public class ScanResultCacheBean {
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @EJB IndexVersionBean indexVersionBean;
+    @Inject MetricRegistry metricRegistry;
+
+    @Inject
+    @ConfigProperty(name = "SCAN_RESULT_CACHE_WEIGHT", defaultValue = "100000")
+    long maxWeight;
+
+    LruCache<Key, ScanResult> cache;
+
+    @PostConstruct
+    public void initialize() {
+        cache = new LruCache<>(maxWeight, scanResult -> 1 + scanResult.getTerms().size());
+        CacheMetrics.register(metricRegistry, "scan_result", cache);
+    }
+
+    /**
+     * Creates cache key for a scan request
+     * @param collection solr collection or collection alias
+     * @param index resolved index field
+     * @param term normalized term
+     * @param pos term position
+     * @param size maximum number of terms
+     * @param include term restriction regular expression
+     * @param withExactFrequency exact frequency flag
+     * @param engine scan engine
+     * @param filterQuery filter query scoping the scan, may be null
+     * @return cache key or empty if the cache is disabled or
+     * the index version of the collection is unknown
+     */
+    @Lock(READ)
+    public Optional<Key> keyOf(String collection, String index, String term, ScanPos pos, int size,
+                               String include, boolean withExactFrequency, ScanEngine engine,
+                               String filterQuery) {
+        if (!cache.isEnabled()) {
+            return Optional.empty();
+        }
+        final String resolvedCollection = solrClientFactoryBean.resolveCollectionAlias(collection);
+        return indexVersionBean.getVersion(resolvedCollection)
+                .map(indexVersion -> new Key(resolvedCollection, indexVersion, index, term, pos, size,
+                        include, withExactFrequency, engine, filterQuery));
+    }
+
+    @Lock(READ)
+    public Optional<ScanResult> get(Key key) {
+        return cache.get(key);
+    }
+
+    @Lock(READ)
+    public void put(Key key, ScanResult scanResult) {
+        cache.put(key, scanResult);
+    }
+
+    public record Key(String collection, String indexVersion, String index, String term, ScanPos pos,
+                      int size, String include, boolean withExactFrequency, ScanEngine engine,
+                      String filterQuery) {}
+}
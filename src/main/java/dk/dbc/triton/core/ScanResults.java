@@ -0,0 +1,83 @@
+package dk.dbc.triton.core;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Combined response of several scans
+ * <p>
+ * Generates XML on the form:
+ * </p>
+ * <pre>
+ * {@code
+ *
+ * <ScanResults>
+ *   <results>
+ *     <result>
+ *       <index>author</index>
+ *       <terms>
+ *         ...
+ *       </terms>
+ *     </result>
+ *     <result>
+ *       <index>title</index>
+ *       <terms>
+ *         ...
+ *       </terms>
+ *     </result>
+ *   </results>
+ * </ScanResults>
+ * }
+ * </pre>
+ *
+ * <p>
+ * Generates JSON on the form:
+ * </p>
+ * <pre>
+ * {@code
+ *
+ * {
+ *   "results" : [ {
+ *     "index" : "author",
+ *     "terms" : [ ... ]
+ *   }, {
+ *     "index" : "title",
+ *     "terms" : [ ... ]
+ *   } ]
+ * }
+ * }
+ * </pre>
+ */
+public class ScanResults {
+    @JacksonXmlElementWrapper(localName = "results")
+    @JacksonXmlProperty(localName = "result")
+    private final List<ScanResult> results;
+
+    public ScanResults(List<ScanResult> results) {
+        this.results = results;
+    }
+
+    public List<ScanResult> getResults() {
+        return results;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ScanResults that = (ScanResults) o;
+        return Objects.equals(results, that.results);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(results);
+    }
+}
@@ -1,7 +1,8 @@
 package dk.dbc.triton.core;
 
 import dk.dbc.solr.SolrFieldAnalysis;
-import dk.dbc.solr.SolrSearch;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -9,12 +10,15 @@ import org.apache.solr.client.solrj.util.ClientUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jakarta.ejb.AsyncResult;
-import jakarta.ejb.Asynchronous;
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
 import java.io.IOException;
-import java.util.concurrent.Future;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,37 +39,79 @@ public class ScanTermAdjusterBean {
             Pattern.compile("(.*?)\\s*((?:#[\\p{Alnum}]+)?\\s*?(?:\\([\\p{Alnum}]+\\))?)$");
 
     @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Inject HedgedRequestBean hedgedRequestBean;
+    @EJB NormalizationCacheBean normalizationCacheBean;
+    @EJB TermFrequencyCacheBean termFrequencyCacheBean;
+    @EJB ReplicaRouterBean replicaRouterBean;
 
     /**
-     * Updates frequency of the given {@link ScanResult.Term} by doing
-     * an exact match search on the term value
+     * Looks up exact frequencies for the given term values, using a single
+     * search request carrying one facet query per value for those values
+     * not found in the {@link TermFrequencyCacheBean}
      * @param collection solr collection
      * @param index index field
-     * @param term scan term
-     * @return {@link Future} containing the updated term to signal
-     * completion of asynchronous operation
-     * @throws TritonException on internal error
+     * @param values scan term values
+     * @param deadline deadline for the lookup, the remaining time is passed
+     *                 on to solr as timeAllowed
+     * @return map of term value to exact frequency
+     * @throws TritonException on internal error or if the deadline expires
      */
-    @Asynchronous
-    public Future<ScanResult.Term> adjustTermFrequency(String collection, String index, ScanResult.Term term)
+    public Map<String, Long> getTermFrequencies(String collection, String index, List<String> values,
+                                                Deadline deadline)
+            throws TritonException {
+        return termFrequencyCacheBean.getFrequencies(collection, index, values, deadline,
+                missingValues -> lookupTermFrequencies(collection, index, missingValues, deadline));
+    }
+
+    private Map<String, Long> lookupTermFrequencies(String collection, String index, List<String> values,
+                                                    Deadline deadline)
             throws TritonException {
+        if (deadline.isExpired()) {
+            throw new DeadlineExpiredException("Deadline expired before looking up term frequencies");
+        }
         try {
-            final String query = String.format("%s:\"%s\"", index, ClientUtils.escapeQueryChars(term.getValue()));
-            final QueryResponse response = createSolrSearch(solrClientFactoryBean.getCloudSolrClient(), collection)
-                    .withQuery(query)
-                    .execute();
-            // Updating the term in-place is slightly dangerous since
-            // ScanResult.Term is not thread-safe. A more functional
-            // approach would be to return a copy of the original term,
-            // but this would force the caller to re-sort the terms,
-            // which for performance reasons is not desirable,
-            term.setFrequency(response.getResults().getNumFound());
-            return new AsyncResult<>(term);
+            final SolrQuery solrQuery = new SolrQuery("*:*")
+                    .setRows(0)
+                    .setFacet(true)
+                    .setTimeAllowed(deadline.timeAllowedMillis());
+            final Map<String, String> facetQueries = new LinkedHashMap<>(values.size());
+            for (String value : values) {
+                final String facetQuery = exactMatchQuery(index, value);
+                facetQueries.put(facetQuery, value);
+                solrQuery.addFacetQuery(facetQuery);
+            }
+            replicaRouterBean.preferFastReplicas(solrQuery);
+            // POST since the combined facet queries can easily
+            // exceed the maximum URL length for large scan sizes
+            final QueryResponse response = hedgedRequestBean.execute(collection,
+                    solrClientFactoryBean.getFrequencyClient(), deadline,
+                    (solrClient, c) -> solrClient.query(c, solrQuery, SolrRequest.METHOD.POST));
+            if (response.getResponseHeader() != null
+                    && Boolean.TRUE.equals(response.getResponseHeader().get("partialResults"))) {
+                // Counts are incomplete when timeAllowed is exceeded
+                throw new DeadlineExpiredException("Deadline expired while looking up term frequencies");
+            }
+            final Map<String, Long> frequencies = new HashMap<>(values.size());
+            response.getFacetQuery().forEach((facetQuery, count) ->
+                    frequencies.put(facetQueries.get(facetQuery), count.longValue()));
+            return frequencies;
         } catch (IOException | SolrServerException e) {
             throw new TritonException(e);
         }
     }
 
+    /**
+     * Looks up the normalization of given term by given field type in the
+     * {@link NormalizationCacheBean} without asking solr
+     * @param collection solr collection
+     * @param fieldType field type on which analysis is performed
+     * @param term scan term
+     * @return normalized term, or empty if not cached
+     */
+    public Optional<String> getCachedNormalization(String collection, String fieldType, String term) {
+        return normalizationCacheBean.keyOf(collection, fieldType, term).flatMap(normalizationCacheBean::get);
+    }
+
     /**
      * Normalizes given term by applying analysis defined for given field type
      * @param collection solr collection
@@ -76,6 +122,23 @@ public class ScanTermAdjusterBean {
      */
     public String normalizeByFieldType(String collection, String fieldType, String term)
             throws TritonException {
+        return getCachedNormalization(collection, fieldType, term)
+                .orElseGet(() -> analyzeByFieldType(collection, fieldType, term));
+    }
+
+    /**
+     * Normalizes given term by applying analysis defined for given field
+     * type, adding the normalization to the {@link NormalizationCacheBean}
+     * without looking it up there first, for callers having already done
+     * so using {@link #getCachedNormalization(String, String, String)}
+     * @param collection solr collection
+     * @param fieldType field type on which analysis is performed
+     * @param term scan term
+     * @return normalized term
+     * @throws TritonException on failure to normalize
+     */
+    public String analyzeByFieldType(String collection, String fieldType, String term)
+            throws TritonException {
         try {
             String normalizedTerm;
             final Matcher scanTermMatcher = scanTermPattern.matcher(term);
@@ -93,20 +156,24 @@ public class ScanTermAdjusterBean {
                         .byFieldType(fieldType, term);
             }
             LOGGER.info("normalized term <{}> into <{}>", term, normalizedTerm);
+            final Optional<NormalizationCacheBean.Key> cacheKey =
+                    normalizationCacheBean.keyOf(collection, fieldType, term);
+            if (cacheKey.isPresent()) {
+                normalizationCacheBean.put(cacheKey.get(), normalizedTerm);
+            }
             return normalizedTerm;
         } catch (SolrServerException e) {
             throw new TritonException(e);
         }
     }
 
-    // These methods exist for easy partial mocking of solr
-    // functionality during testing
-
-    SolrSearch createSolrSearch(CloudSolrClient cloudSolrClient, String collection) {
-        return new SolrSearch(cloudSolrClient, collection)
-                .withRows(0);
+    private static String exactMatchQuery(String index, String value) {
+        return String.format("%s:\"%s\"", index, ClientUtils.escapeQueryChars(value));
     }
 
+    // This method exists for easy partial mocking of solr
+    // functionality during testing
+
     SolrFieldAnalysis createSolrFieldAnalysis(CloudSolrClient cloudSolrClient, String collection) {
         return new SolrFieldAnalysis(cloudSolrClient, collection);
     }
@@ -0,0 +1,226 @@
+package dk.dbc.triton.core;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Scans an index by sending shard-local terms requests to a replica of
+ * each shard in parallel, merging the sorted term lists in triton
+ * <p>
+ * This takes the aggregating solr node out of the scan. Each shard request
+ * must complete within SHARD_SCAN_TIMEOUT_MS milliseconds, or before the
+ * deadline of the scan if sooner, which also bounds its timeAllowed. If
+ * a shard fails or times out the scan fails at once, cancelling the
+ * requests of the other shards not yet started, unless partial results
+ * are tolerated, in which case the terms of the remaining shards are
+ * returned with the missing shards listed in the result, keeping it out
+ * of the cache.
+ * </p>
+ * <p>
+ * Like the terms component itself, shard scans only walk forward from
+ * the term. A scan ending at the term cannot be merged from the first
+ * terms of each shard, so the shards engine only supports pos first.
+ * </p>
+ */
+@Stateless
+public class ShardScanBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardScanBean.class);
+
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @EJB ScanExecutorBean scanExecutorBean;
+    @EJB ReplicaRouterBean replicaRouterBean;
+
+    @Inject
+    @ConfigProperty(name = "SHARD_SCAN_TIMEOUT_MS", defaultValue = "5000")
+    long shardTimeoutMs;
+
+    /**
+     * Scans index of collection shard by shard
+     * @param collection solr collection
+     * @param index index field
+     * @param term term to scan from
+     * @param inclusive whether or not the term itself is included
+     * @param size maximum number of terms
+     * @param include regular expression restricting the terms, ignored if empty
+     * @param tolerant whether or not to return partial results if shards fail
+     * @param deadline deadline of the scan, bounding the shard timeout
+     * @return future completed with the merged scan result
+     */
+    public CompletableFuture<ScanResult> scan(String collection, String index, String term, boolean inclusive,
+                                              int size, String include, boolean tolerant, Deadline deadline) {
+        final Map<String, List<String>> shards = solrClientFactoryBean.getLiveShardCoreUrls(collection);
+        if (shards.isEmpty()) {
+            return CompletableFuture.failedFuture(new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "Collection not found: " + collection));
+        }
+        final Deadline shardDeadline = Deadline.after(Math.min(shardTimeoutMs, deadline.remainingMillis()));
+        final List<String> shardNames = new ArrayList<>(shards.keySet());
+        final List<Supplier<ScanResult>> tasks = new ArrayList<>(shardNames.size());
+        for (String shard : shardNames) {
+            final SolrQuery query = shardQuery(index, term, inclusive, size, include, shardDeadline);
+            tasks.add(() -> scanShard(collection, shard, shards.get(shard), index, query));
+        }
+        final List<CompletableFuture<ScanResult>> futures = new ArrayList<>(tasks.size());
+        for (CompletableFuture<ScanResult> future : scanExecutorBean.submitAll(tasks)) {
+            futures.add(future.orTimeout(shardDeadline.remainingMillis(), TimeUnit.MILLISECONDS));
+        }
+        if (!tolerant) {
+            // The first failing shard fails the scan, releasing the
+            // requests of the other shards not yet started
+            futures.forEach(future -> future.whenComplete((result, e) -> {
+                if (e != null) {
+                    futures.forEach(other -> other.cancel(false));
+                }
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .handle((ignore, e) -> {
+                    final List<List<ScanResult.Term>> shardTerms = new ArrayList<>(futures.size());
+                    final List<String> missingShards = new ArrayList<>();
+                    RuntimeException failure = null;
+                    for (int i = 0; i < futures.size(); i++) {
+                        try {
+                            shardTerms.add(futures.get(i).join().getTerms());
+                        } catch (CancellationException ce) {
+                            missingShards.add(shardNames.get(i));
+                        } catch (RuntimeException re) {
+                            LOGGER.warn("Shard {} of {} failed: {}", shardNames.get(i), collection,
+                                    re.getMessage());
+                            missingShards.add(shardNames.get(i));
+                            if (failure == null) {
+                                failure = re;
+                            }
+                        }
+                    }
+                    if (!tolerant && failure != null) {
+                        throw failure;
+                    }
+                    if (shardTerms.isEmpty()) {
+                        throw new TritonException(String.format("All shards of %s failed", collection));
+                    }
+                    final ScanResult scanResult = new ScanResult(index, merge(shardTerms, size));
+                    if (!missingShards.isEmpty()) {
+                        scanResult.setMissingShards(missingShards);
+                    }
+                    return scanResult;
+                });
+    }
+
+    /**
+     * Merges term lists sorted in index order using a k-way heap merge,
+     * summing the frequencies of terms found in more than one list
+     * @param termLists term lists sorted in index order
+     * @param size maximum number of terms to keep
+     * @return merged terms in index order
+     */
+    static List<ScanResult.Term> merge(List<List<ScanResult.Term>> termLists, int size) {
+        final PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, termLists.size()));
+        for (List<ScanResult.Term> terms : termLists) {
+            if (!terms.isEmpty()) {
+                heap.add(new Cursor(terms));
+            }
+        }
+        final List<ScanResult.Term> merged = new ArrayList<>(size);
+        ScanResult.Term last = null;
+        while (!heap.isEmpty()) {
+            final Cursor cursor = heap.poll();
+            final ScanResult.Term term = cursor.current();
+            if (last != null && last.getValue().equals(term.getValue())) {
+                last.setFrequency(last.getFrequency() + term.getFrequency());
+            } else {
+                if (merged.size() == size) {
+                    break;
+                }
+                last = new ScanResult.Term(term.getValue(), term.getFrequency());
+                merged.add(last);
+            }
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private ScanResult scanShard(String collection, String shard, List<String> coreUrls, String index,
+                                 SolrQuery query) {
+        if (coreUrls.isEmpty()) {
+            throw new TritonException(String.format("No active replica of shard %s of %s", shard, collection));
+        }
+        final String coreUrl = replicaRouterBean.isEnabled() ?
+                replicaRouterBean.rank(coreUrls).get(0) :
+                coreUrls.get(ThreadLocalRandom.current().nextInt(coreUrls.size()));
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final TermsResponse termsResponse = solrClientFactoryBean.getReplicaClient(coreUrl)
+                    .query(query)
+                    .getTermsResponse();
+            success = true;
+            return ScanResult.of(termsResponse, index);
+        } catch (IOException | SolrServerException e) {
+            throw new TritonException(e);
+        } finally {
+            replicaRouterBean.record(ReplicaRouterBean.baseUrlOf(coreUrl), System.nanoTime() - start, success);
+        }
+    }
+
+    private static SolrQuery shardQuery(String index, String term, boolean inclusive, int size, String include,
+                                        Deadline deadline) {
+        final SolrQuery query = new SolrQuery()
+                .setRequestHandler("/terms")
+                .setTerms(true)
+                .setTermsLimit(size)
+                .setTermsSortString("index")
+                .addTermsField(index)
+                .setTimeAllowed(deadline.timeAllowedMillis());
+        query.set(CommonParams.DISTRIB, false);
+        query.setTermsLower(term).setTermsLowerInclusive(inclusive);
+        if (!include.isEmpty()) {
+            query.setTermsRegex(include);
+        }
+        return query;
+    }
+
+    /* Position in a term list */
+    private static class Cursor implements Comparable<Cursor> {
+        private final List<ScanResult.Term> terms;
+        private int position;
+
+        Cursor(List<ScanResult.Term> terms) {
+            this.terms = terms;
+        }
+
+        ScanResult.Term current() {
+            return terms.get(position);
+        }
+
+        boolean advance() {
+            return ++position < terms.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return current().getValue().compareTo(other.current().getValue());
+        }
+    }
+}
@@ -2,14 +2,19 @@ package dk.dbc.triton.core;
 
 import dk.dbc.solr.ZkParams;
 import jakarta.annotation.PostConstruct;
-import jakarta.ejb.Lock;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Inject;
 import org.apache.http.client.HttpClient;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
 import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
 import org.apache.solr.client.solrj.request.SolrPing;
 import org.apache.solr.client.solrj.response.SolrPingResponse;
 import org.apache.solr.common.cloud.ClusterState;
@@ -20,17 +25,20 @@ import org.apache.solr.common.cloud.ZkCoreNodeProps;
 import org.apache.solr.common.cloud.ZkStateReader;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.health.HealthCheck;
-import org.eclipse.microprofile.health.HealthCheckResponse;
-import org.eclipse.microprofile.health.Liveness;
-import org.eclipse.microprofile.health.Readiness;
+import org.eclipse.microprofile.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import static jakarta.ejb.LockType.READ;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @ApplicationScoped
 public class SolrClientFactoryBean {
@@ -40,33 +48,206 @@ public class SolrClientFactoryBean {
 
     @Inject
     @ConfigProperty(name = "ZOOKEEPER", defaultValue = ZOOKEEPER_NOT_CONFIGURED)
-    private String zookeeper;
+    String zookeeper;
 
     @Inject
     @ConfigProperty(name = "DEFAULT_COLLECTION", defaultValue = DEFAULT_COLLECTION_NOT_CONFIGURED)
-    private String defaultCollection;
+    String defaultCollection;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP_MAX_CONNECTIONS", defaultValue = "32")
+    int maxConnections;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP_MAX_CONNECTIONS_PER_HOST", defaultValue = "32")
+    int maxConnectionsPerHost;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP_SO_TIMEOUT_MS", defaultValue = "5000")
+    int soTimeoutMs;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP_CONNECTION_TIMEOUT_MS", defaultValue = "5000")
+    int connectionTimeoutMs;
+
+    /* Number of connections opened to each live solr node at startup */
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP_PREWARM_CONNECTIONS", defaultValue = "4")
+    int prewarmConnections;
+
+    /* Whether or not to look up exact term frequencies over HTTP/2 */
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP2_FREQUENCY_LOOKUPS", defaultValue = "false")
+    boolean http2FrequencyLookups;
+
+    @Inject
+    @ConfigProperty(name = "SOLR_HTTP2_MAX_CONNECTIONS_PER_HOST", defaultValue = "4")
+    int http2MaxConnectionsPerHost;
+
+    @Inject MetricRegistry metricRegistry;
+    @Resource ManagedExecutorService executorService;
 
     private CloudSolrClient cloudSolrClient;
+    private HttpClient httpClient;
+    InstrumentedConnectionManager connectionManager;
+    private SolrClient frequencyClient;
+    private Http2SolrClient http2SolrClient;
+    private final Map<String, SolrClient> replicaClients = new ConcurrentHashMap<>();
+    private final Map<String, SolrClient> http2ReplicaClients = new ConcurrentHashMap<>();
 
+    /* The default collection is not pinged here, since the health
+       prober does so anyway and startup should not wait for solr */
     @PostConstruct
     public void initialize() {
         LOGGER.info("Zookeeper quorum: {}", zookeeper);
-        final ZkParams zkParams = ZkParams.create(zookeeper);
-        cloudSolrClient = new CloudSolrClient.Builder(zkParams.getZkHosts(), zkParams.getZkChroot())
-                .withHttpClient(createHttpClient())
-                .build();
-        cloudSolrClient.connect();
-        pingDefaultCollection();
+        httpClient = createHttpClient();
+        cloudSolrClient = createCloudSolrClient(httpClient);
+        if (http2FrequencyLookups) {
+            http2SolrClient = createHttp2SolrClient();
+            frequencyClient = createHttp2CloudSolrClient(http2SolrClient);
+            LOGGER.info("Exact term frequencies are looked up over HTTP/2 with {} connections per host",
+                    http2MaxConnectionsPerHost);
+        } else {
+            frequencyClient = cloudSolrClient;
+        }
+        if (prewarmConnections > 0) {
+            executorService.execute(this::prewarmReplicaConnections);
+        }
+    }
+
+    /* The replica clients share the transport of the cloud clients
+       and are closed before them, the pooled connections last */
+    @PreDestroy
+    public void shutdown() {
+        replicaClients.values().forEach(SolrClientFactoryBean::close);
+        replicaClients.clear();
+        http2ReplicaClients.values().forEach(SolrClientFactoryBean::close);
+        http2ReplicaClients.clear();
+        if (frequencyClient != cloudSolrClient) {
+            close(frequencyClient);
+        }
+        close(http2SolrClient);
+        close(cloudSolrClient);
+        if (httpClient != null) {
+            HttpClientUtil.close(httpClient);
+        }
     }
 
     public CloudSolrClient getCloudSolrClient() {
         return cloudSolrClient;
     }
 
+    /**
+     * Returns client for the exact term frequency lookups fanned out by
+     * scans, multiplexing concurrent lookups over a few HTTP/2 connections
+     * per node if SOLR_HTTP2_FREQUENCY_LOOKUPS is enabled, otherwise the
+     * cloud client
+     * @return solr client
+     */
+    public SolrClient getFrequencyClient() {
+        return frequencyClient;
+    }
+
     public String getDefaultCollection() {
         return defaultCollection;
     }
 
+    /**
+     * Returns client for requests targeting a specific replica core,
+     * sharing the connection pool of the cloud client
+     * @param coreUrl URL of replica core
+     * @return solr client
+     */
+    public SolrClient getReplicaClient(String coreUrl) {
+        final String baseUrl = coreUrl.endsWith("/") ? coreUrl.substring(0, coreUrl.length() - 1) : coreUrl;
+        return replicaClients.computeIfAbsent(baseUrl, url -> new HttpSolrClient.Builder(url)
+                .withHttpClient(httpClient)
+                .build());
+    }
+
+    /**
+     * Returns client for requests targeting a specific replica core over
+     * the same transport as the given client, that is over HTTP/2 for the
+     * frequency client if SOLR_HTTP2_FREQUENCY_LOOKUPS is enabled
+     * @param coreUrl URL of replica core
+     * @param via client whose transport is used
+     * @return solr client
+     */
+    public SolrClient getReplicaClient(String coreUrl, SolrClient via) {
+        if (via != frequencyClient || http2SolrClient == null) {
+            return getReplicaClient(coreUrl);
+        }
+        final String baseUrl = coreUrl.endsWith("/") ? coreUrl.substring(0, coreUrl.length() - 1) : coreUrl;
+        return http2ReplicaClients.computeIfAbsent(baseUrl, url -> new Http2SolrClient.Builder(url)
+                .withHttpClient(http2SolrClient)
+                .idleTimeout(soTimeoutMs)
+                .build());
+    }
+
+    /**
+     * @param collection solr collection or collection alias
+     * @return core URLs of the active replicas on live nodes of the collection
+     */
+    public List<String> getLiveReplicaCoreUrls(String collection) {
+        final String collectionName = resolveCollectionAlias(collection);
+        final ClusterState clusterState = cloudSolrClient.getZkStateReader().getClusterState();
+        final Set<String> liveNodes = clusterState.getLiveNodes();
+        final DocCollection docCollection = clusterState.getCollectionOrNull(collectionName);
+        final List<String> coreUrls = new ArrayList<>();
+        if (docCollection != null) {
+            for (Replica replica : docCollection.getReplicas()) {
+                if (replica.getState() == Replica.State.ACTIVE && liveNodes.contains(replica.getNodeName())) {
+                    coreUrls.add(new ZkCoreNodeProps(replica).getCoreUrl());
+                }
+            }
+        }
+        return coreUrls;
+    }
+
+    /**
+     * @param collection solr collection or collection alias
+     * @return map of each shard of the collection to the core URLs of its
+     * active replicas on live nodes, empty if the collection does not exist
+     */
+    public Map<String, List<String>> getLiveShardCoreUrls(String collection) {
+        final String collectionName = resolveCollectionAlias(collection);
+        final ClusterState clusterState = cloudSolrClient.getZkStateReader().getClusterState();
+        final Set<String> liveNodes = clusterState.getLiveNodes();
+        final DocCollection docCollection = clusterState.getCollectionOrNull(collectionName);
+        final Map<String, List<String>> coreUrls = new LinkedHashMap<>();
+        if (docCollection != null) {
+            for (Slice slice : docCollection.getActiveSlices()) {
+                final List<String> sliceCoreUrls = new ArrayList<>();
+                for (Replica replica : slice.getReplicas()) {
+                    if (replica.getState() == Replica.State.ACTIVE && liveNodes.contains(replica.getNodeName())) {
+                        sliceCoreUrls.add(new ZkCoreNodeProps(replica).getCoreUrl());
+                    }
+                }
+                coreUrls.put(slice.getName(), sliceCoreUrls);
+            }
+        }
+        return coreUrls;
+    }
+
+    /**
+     * @return map of base URL of each live node to the core URL of an
+     * active replica on that node
+     */
+    public Map<String, String> getLiveNodeCoreUrls() {
+        final ClusterState clusterState = cloudSolrClient.getZkStateReader().getClusterState();
+        final Set<String> liveNodes = clusterState.getLiveNodes();
+        final Map<String, String> coreUrls = new HashMap<>();
+        clusterState.forEachCollection(docCollection -> {
+            for (Replica replica : docCollection.getReplicas()) {
+                if (replica.getState() == Replica.State.ACTIVE && liveNodes.contains(replica.getNodeName())) {
+                    final ZkCoreNodeProps zkProps = new ZkCoreNodeProps(replica);
+                    coreUrls.putIfAbsent(zkProps.getBaseUrl(), zkProps.getCoreUrl());
+                }
+            }
+        });
+        return coreUrls;
+    }
+
     public void logLiveReplicas(String collection) {
         final String collectionName = resolveCollectionAlias(collection);
         final ZkStateReader zkStateReader = cloudSolrClient.getZkStateReader();
@@ -93,14 +274,94 @@ public class SolrClientFactoryBean {
         return resolvedName;
     }
 
+    /* Opens connections to all live solr nodes by pinging a replica core
+       on each node concurrently, so that the first scans after a deploy
+       find connections in the pool */
+    private void prewarmReplicaConnections() {
+        final long start = System.nanoTime();
+        final Map<String, String> coreUrlByNode = getLiveNodeCoreUrls();
+        final List<CompletableFuture<Void>> pings = new ArrayList<>();
+        for (String coreUrl : coreUrlByNode.values()) {
+            final SolrClient replicaClient = getReplicaClient(coreUrl);
+            for (int i = 0; i < prewarmConnections; i++) {
+                pings.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        new SolrPing().process(replicaClient);
+                    } catch (SolrServerException | IOException | RuntimeException e) {
+                        LOGGER.debug("Unable to prewarm connection to {}: {}", coreUrl, e.getMessage());
+                    }
+                }, executorService));
+            }
+        }
+        // Not joined, as waiting on pings queued to the same executor
+        // would hold one of its threads for no purpose
+        CompletableFuture.allOf(pings.toArray(new CompletableFuture[0])).whenComplete((ignore, e) ->
+                LOGGER.info("Prewarmed {} connections to {} solr nodes in {} ms", pings.size(),
+                        coreUrlByNode.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    // This method exists for easy partial mocking of zookeeper
+    CloudSolrClient createCloudSolrClient(HttpClient httpClient) {
+        long start = System.nanoTime();
+        final ZkParams zkParams = ZkParams.create(zookeeper);
+        final CloudSolrClient cloudSolrClient = new CloudSolrClient.Builder(
+                zkParams.getZkHosts(), zkParams.getZkChroot())
+                .withHttpClient(httpClient)
+                .build();
+        LOGGER.info("Created solr client in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        start = System.nanoTime();
+        cloudSolrClient.connect();
+        LOGGER.info("Connected to zookeeper in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return cloudSolrClient;
+    }
+
+    // This method exists for easy partial mocking of zookeeper
+    SolrClient createHttp2CloudSolrClient(Http2SolrClient http2SolrClient) {
+        final ZkParams zkParams = ZkParams.create(zookeeper);
+        final CloudHttp2SolrClient cloudHttp2SolrClient = new CloudHttp2SolrClient.Builder(
+                zkParams.getZkHosts(), zkParams.getZkChroot())
+                .withHttpClient(http2SolrClient)
+                .build();
+        cloudHttp2SolrClient.connect();
+        return cloudHttp2SolrClient;
+    }
+
+    private Http2SolrClient createHttp2SolrClient() {
+        return new Http2SolrClient.Builder()
+                .connectionTimeout(connectionTimeoutMs)
+                .idleTimeout(soTimeoutMs)
+                .maxConnectionsPerHost(http2MaxConnectionsPerHost)
+                .build();
+    }
+
+    private static void close(SolrClient solrClient) {
+        if (solrClient != null) {
+            try {
+                solrClient.close();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Unable to close solr client: {}", e.getMessage());
+            }
+        }
+    }
+
     private HttpClient createHttpClient() {
-        // At some point we may need to make these configurable
         final ModifiableSolrParams params = new ModifiableSolrParams();
-        params.set(HttpClientUtil.PROP_SO_TIMEOUT, 5000);
-        params.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, 5000);
-        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS, 32);
-        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, 32);
-        return HttpClientUtil.createClient(params);
+        params.set(HttpClientUtil.PROP_SO_TIMEOUT, soTimeoutMs);
+        params.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, connectionTimeoutMs);
+        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS, maxConnections);
+        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHost);
+        connectionManager = new InstrumentedConnectionManager(
+                HttpClientUtil.getSocketFactoryRegistryProvider().getSocketFactoryRegistry(),
+                metricRegistry.timer("solr_connection_lease_wait"));
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        metricRegistry.gauge("solr_connections_leased", connectionManager, cm -> cm.getTotalStats().getLeased());
+        metricRegistry.gauge("solr_connections_pending", connectionManager, cm -> cm.getTotalStats().getPending());
+        metricRegistry.gauge("solr_connections_available", connectionManager, cm -> cm.getTotalStats().getAvailable());
+        metricRegistry.gauge("solr_connections_max", connectionManager, cm -> cm.getTotalStats().getMax());
+        LOGGER.info("Solr connection pool: {} connections, {} per host, timeouts {}/{} ms",
+                maxConnections, maxConnectionsPerHost, connectionTimeoutMs, soTimeoutMs);
+        return HttpClientUtil.createClient(params, connectionManager);
     }
 
     public boolean pingDefaultCollection() {
@@ -124,18 +385,4 @@ public class SolrClientFactoryBean {
         }
         return false;
     }
-
-    @Produces
-    @Liveness
-    @Lock(READ)
-    public HealthCheck livenessPing() {
-        return () -> HealthCheckResponse.named("ping-solr").status(pingDefaultCollection()).build();
-    }
-
-    @Produces
-    @Readiness
-    @Lock(READ)
-    public HealthCheck readinessPing() {
-        return () -> HealthCheckResponse.named("ping-solr").status(pingDefaultCollection()).build();
-    }
 }
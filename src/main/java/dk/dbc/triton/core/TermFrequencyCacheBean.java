@@ -0,0 +1,151 @@
+package dk.dbc.triton.core;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Lock;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static jakarta.ejb.LockType.READ;
+
+/**
+ * Bounded in-process cache of exact term frequencies shared across requests
+ * <p>
+ * Frequencies are keyed on the resolved collection, index and term value
+ * together with the current index version of the collection as reported
+ * by {@link IndexVersionBean}. Least recently used frequencies are evicted
+ * when the number of cached frequencies exceeds TERM_FREQUENCY_CACHE_SIZE.
+ * A size of zero disables the cache.
+ * </p>
+ * <p>
+ * Concurrent lookups of the same frequency are deduplicated, meaning that
+ * a request needing a frequency which is currently being looked up by
+ * another request waits for that lookup instead of issuing its own, unless
+ * that lookup fails or does not complete before the deadline of the
+ * waiting request.
+ * </p>
+ */
+@Singleton
+public class TermFrequencyCacheBean {
+    @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @EJB IndexVersionBean indexVersionBean;
+    @Inject MetricRegistry metricRegistry;
+
+    @Inject
+    @ConfigProperty(name = "TERM_FREQUENCY_CACHE_SIZE", defaultValue = "100000")
+    long maxSize;
+
+    LruCache<Key, Long> cache;
+    final Map<Key, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initialize() {
+        cache = new LruCache<>(maxSize);
+        CacheMetrics.register(metricRegistry, "term_frequency", cache);
+    }
+
+    /**
+     * Returns exact frequencies for the given term values, using the given
+     * lookup function for those frequencies neither cached nor currently
+     * being looked up by others
+     * @param collection solr collection or collection alias
+     * @param index index field
+     * @param values term values
+     * @param deadline deadline for waiting on lookups done by others,
+     *                 frequencies not looked up by others in time are
+     *                 looked up using the given lookup function
+     * @param lookup function looking up exact frequencies for a list of term values
+     * @return map of term value to exact frequency
+     * @throws TritonException if lookup fails
+     */
+    @Lock(READ)
+    public Map<String, Long> getFrequencies(String collection, String index, List<String> values,
+                                            Deadline deadline,
+                                            Function<List<String>, Map<String, Long>> lookup)
+            throws TritonException {
+        if (!cache.isEnabled()) {
+            return lookup.apply(values);
+        }
+        final String resolvedCollection = solrClientFactoryBean.resolveCollectionAlias(collection);
+        final Optional<String> indexVersion = indexVersionBean.getVersion(resolvedCollection);
+        if (indexVersion.isEmpty()) {
+            return lookup.apply(values);
+        }
+
+        final Map<String, Long> frequencies = new HashMap<>(values.size());
+        final Map<String, CompletableFuture<Long>> awaited = new HashMap<>();
+        final Map<String, CompletableFuture<Long>> owned = new HashMap<>();
+        for (String value : values) {
+            final Key key = new Key(resolvedCollection, indexVersion.get(), index, value);
+            final Optional<Long> cachedFrequency = cache.get(key);
+            if (cachedFrequency.isPresent()) {
+                frequencies.put(value, cachedFrequency.get());
+            } else {
+                final CompletableFuture<Long> future = new CompletableFuture<>();
+                final CompletableFuture<Long> otherFuture = inFlight.putIfAbsent(key, future);
+                if (otherFuture != null) {
+                    awaited.put(value, otherFuture);
+                } else {
+                    owned.put(value, future);
+                }
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            try {
+                final Map<String, Long> lookedUp = lookup.apply(new ArrayList<>(owned.keySet()));
+                owned.forEach((value, future) -> {
+                    final Long frequency = lookedUp.get(value);
+                    if (frequency != null) {
+                        cache.put(new Key(resolvedCollection, indexVersion.get(), index, value), frequency);
+                        frequencies.put(value, frequency);
+                    }
+                    future.complete(frequency);
+                });
+            } catch (RuntimeException | Error e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            } finally {
+                owned.keySet().forEach(value ->
+                        inFlight.remove(new Key(resolvedCollection, indexVersion.get(), index, value)));
+            }
+        }
+
+        // Frequencies whose lookup by another request failed or did not
+        // complete in time are looked up by this request instead
+        final List<String> notAnswered = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Long>> entry : awaited.entrySet()) {
+            try {
+                final Long frequency = entry.getValue().get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+                if (frequency != null) {
+                    frequencies.put(entry.getKey(), frequency);
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                notAnswered.add(entry.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TritonException(e);
+            }
+        }
+        if (!notAnswered.isEmpty()) {
+            frequencies.putAll(lookup.apply(notAnswered));
+        }
+        return frequencies;
+    }
+
+    public record Key(String collection, String indexVersion, String index, String value) {}
+}
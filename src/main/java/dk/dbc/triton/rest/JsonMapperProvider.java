@@ -16,8 +16,8 @@ public class JsonMapperProvider implements ContextResolver<ObjectMapper> {
 
     public JsonMapperProvider() {
         objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true)
-            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+        objectMapper.registerModule(new ScanResultModule());
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
             .setSerializationInclusion(JsonInclude.Include.NON_NULL)
             .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
     }
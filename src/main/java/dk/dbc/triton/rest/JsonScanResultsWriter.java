@@ -0,0 +1,20 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import dk.dbc.triton.core.ScanResults;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.Provider;
+
+@Provider
+@Produces({ MediaType.APPLICATION_JSON })
+public class JsonScanResultsWriter extends MapperBodyWriter<ScanResults> {
+    public JsonScanResultsWriter() {
+        super(ScanResults.class, new JsonMapperProvider().getContext(ScanResults.class));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.core.UriInfo;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes entities of a single type using {@link ObjectWriter}s created
+ * once, instead of per response
+ * <p>
+ * Output is compact unless the request has query parameter pretty=true.
+ * </p>
+ * @param <T> entity type
+ */
+public abstract class MapperBodyWriter<T> implements MessageBodyWriter<T> {
+    @Context
+    UriInfo uriInfo;
+
+    private final Class<T> entityType;
+    private final ObjectWriter compactWriter;
+    private final ObjectWriter prettyWriter;
+
+    protected MapperBodyWriter(Class<T> entityType, ObjectMapper objectMapper) {
+        this.entityType = entityType;
+        final ObjectWriter writer = objectMapper.writerFor(entityType)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        compactWriter = writer.without(SerializationFeature.INDENT_OUTPUT);
+        prettyWriter = writer.with(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return entityType.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(T entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        (isPretty() ? prettyWriter : compactWriter).writeValue(entityStream, entity);
+    }
+
+    private boolean isPretty() {
+        return uriInfo != null && Boolean.parseBoolean(uriInfo.getQueryParameters().getFirst("pretty"));
+    }
+}
@@ -5,38 +5,69 @@
 
 package dk.dbc.triton.rest;
 
-import dk.dbc.solr.SolrScan;
-import dk.dbc.solr.SolrSearch;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import dk.dbc.triton.core.Deadline;
+import dk.dbc.triton.core.DeadlineExpiredException;
+import dk.dbc.triton.core.FacetScanBean;
+import dk.dbc.triton.core.HedgedRequestBean;
+import dk.dbc.triton.core.ReplicaRouterBean;
+import dk.dbc.triton.core.ScanCursor;
+import dk.dbc.triton.core.ScanEngine;
+import dk.dbc.triton.core.ScanExecutorBean;
 import dk.dbc.triton.core.ScanMapBean;
 import dk.dbc.triton.core.ScanPos;
 import dk.dbc.triton.core.ScanResult;
+import dk.dbc.triton.core.ScanResultCacheBean;
+import dk.dbc.triton.core.ScanResults;
 import dk.dbc.triton.core.ScanTermAdjusterBean;
+import dk.dbc.triton.core.ShardScanBean;
 import dk.dbc.triton.core.SolrClientFactoryBean;
 import dk.dbc.triton.core.TritonException;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Inject;
-import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.BeanParam;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
-import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.common.SolrException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Stateless
 @Path("scan")
@@ -44,112 +75,784 @@ public class ScanBean {
     private static final Logger LOGGER = LoggerFactory.getLogger(ScanBean.class);
 
     @Inject SolrClientFactoryBean solrClientFactoryBean;
+    @Inject HedgedRequestBean hedgedRequestBean;
     @EJB ScanTermAdjusterBean scanTermAdjusterBean;
     @EJB ScanMapBean scanMapBean;
+    @EJB ScanResultCacheBean scanResultCacheBean;
+    @EJB ScanExecutorBean scanExecutorBean;
+    @EJB ReplicaRouterBean replicaRouterBean;
+    @EJB ShardScanBean shardScanBean;
+    @EJB FacetScanBean facetScanBean;
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String MISSING_SHARDS_HEADER = "X-Missing-Shards";
+    static final String TRUNCATED_HEADER = "X-Truncated";
+
+    private static final ObjectWriter NDJSON_WRITER = new JsonMapperProvider()
+            .getContext(ScanResult.Term.class)
+            .writerFor(ScanResult.Term.class);
+
+    /* Maximum number of terms whose exact frequencies are looked up
+       in a single solr request */
+    @Inject
+    @ConfigProperty(name = "FREQUENCY_BATCH_SIZE", defaultValue = "50")
+    int frequencyBatchSize;
+
+    /* Maximum number of scans in a batch */
+    @Inject
+    @ConfigProperty(name = "SCAN_BATCH_MAX_SIZE", defaultValue = "20")
+    int batchMaxSize;
+
+    /* Default end-to-end deadline for a scan */
+    @Inject
+    @ConfigProperty(name = "SCAN_TIMEOUT_MS", defaultValue = "10000")
+    long defaultTimeoutMs;
 
     /**
      * Scans database index for a term or a phrase
-     * @param term index term
-     * @param indexParam index field
-     * @param collectionParam solr collection, defaults to value of
-     *                        environment variable DEFAULT_COLLECTION
-     * @param pos preferred term position {first|last}, defaults to first
-     * @param size maximum number of entries to be return, defaults to 20
-     * @param include restricts to terms matching the regular expression
-     * @param withExactFrequency perform exact match search for each scan
-     *                           term to adjust term frequencies,
-     *                           defaults to true
-     * @param fieldType normalize input term before scan using analysis
-     *                  phases defined by this field type
-     * @return 200 Ok response containing serialized {@link ScanResult}.
+     * @param params scan parameters, see {@link ScanParams}
+     * @return 200 Ok response containing serialized {@link ScanResult},
+     *         or {@link ScanResults} when scanning several indexes without
+     *         merging them.
      *         400 Bad Request on null or empty term or index param.
+     *         400 Bad Request on malformed cursor param.
      *         400 Bad Request on non-existing collection.
+     *         400 Bad Request on pos other than first with the facet engine.
+     *         400 Bad Request on fq with an engine other than facet.
+     *         504 Gateway Timeout if the scan did not complete within its deadline.
      * @throws TritonException on internal error
      * @throws WebApplicationException on bad request
      */
     @GET
-    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML,
+            CborMapperProvider.APPLICATION_CBOR, SmileMapperProvider.APPLICATION_SMILE })
     @AccessLogged
-    public Response scan(
-            @QueryParam("term") String term,
-            @QueryParam("index") String indexParam,
-            @QueryParam("collection") String collectionParam,
-            @QueryParam("pos") @DefaultValue("first") ScanPos pos,
-            @QueryParam("size") @DefaultValue("20") int size,
-            @QueryParam("include") @DefaultValue("") String include,
-            @QueryParam("withExactFrequency") @DefaultValue("true") boolean withExactFrequency,
-            @QueryParam("fieldType") @DefaultValue("dbc-scan") String fieldType)
+    public Response scan(@BeanParam ScanParams params)
             throws TritonException, WebApplicationException {
-        verifyStringParam("term", term);
-        verifyStringParam("index", indexParam);
-        final String collection = collectionParam != null && !collectionParam.trim().isEmpty() ?
-                collectionParam : solrClientFactoryBean.getDefaultCollection();
-        ScanResult scanResult = null;
         try {
-            final CloudSolrClient cloudSolrClient = solrClientFactoryBean.getCloudSolrClient();
-            if (LOGGER.isDebugEnabled()) {
-                solrClientFactoryBean.logLiveReplicas(collection);
+            return Response.ok(entityStage(params, false).join()).build();
+        } catch (CompletionException e) {
+            throw convertException(e);
+        }
+    }
+
+    /**
+     * Scans database index for a term or a phrase without blocking the
+     * request thread while waiting for solr
+     * @param asyncResponse response resumed with the result of the scan
+     * @param params scan parameters, see {@link ScanParams}
+     * @throws WebApplicationException on bad request
+     * @see #scan(ScanParams)
+     */
+    @GET
+    @Path("async")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML,
+            CborMapperProvider.APPLICATION_CBOR, SmileMapperProvider.APPLICATION_SMILE })
+    @AccessLogged
+    public void scanAsync(@Suspended AsyncResponse asyncResponse, @BeanParam ScanParams params)
+            throws WebApplicationException {
+        entityStage(params, true).whenComplete((entity, e) -> {
+            if (e != null) {
+                asyncResponse.resume(convertException(e));
+            } else {
+                asyncResponse.resume(Response.ok(entity).build());
             }
-            final String index = scanMapBean.resolve(collection, indexParam);
-            LOGGER.info("Index parameter {} resolved to {}", indexParam, index);
-            term = normalizeTermByFieldType(collection, fieldType, term);
-            final SolrScan solrScan = createSolrScan(cloudSolrClient, collection)
-                    .withField(index)
-                    .withLimit(size);
+        });
+    }
+
+    /**
+     * Scans database index for a term or a phrase streaming the resulting
+     * terms as newline delimited JSON
+     * <p>
+     * Each term is written in index order as soon as its exact frequency
+     * is known. Lookups of later terms proceed while earlier terms are
+     * written, so only the terms of the lookups in progress are buffered.
+     * Terms whose exact frequency could not be determined within the
+     * deadline of the scan are written with exact false. The shards
+     * missing from a partial shard by shard scan are listed in the
+     * X-Missing-Shards header.
+     * </p>
+     * @param params scan parameters, see {@link ScanParams}
+     * @return 200 Ok response streaming serialized {@link ScanResult.Term}s,
+     *         otherwise as {@link #scan(ScanParams)}
+     * @throws TritonException on internal error
+     * @throws WebApplicationException on bad request
+     */
+    @GET
+    @Path("stream")
+    @Produces(NDJSON)
+    @AccessLogged
+    public Response scanStream(@BeanParam ScanParams params)
+            throws TritonException, WebApplicationException {
+        if (isMultiIndex(params)) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("streaming is not supported when scanning several indexes")
+                            .build());
+        }
+        final String collection = hasCursor(params) ?
+                decodeCursor(params.getCursor()).collection() : collectionOf(params);
+        final Deadline deadline = deadlineOf(params);
+        final ScanResult scanResult;
+        try {
+            // Exact frequencies are looked up while streaming
+            scanResult = scanStage(params, false, deadline, false, new HashMap<>()).join();
+        } catch (CompletionException e) {
+            throw convertException(e);
+        }
+        // Facet counts are exact already
+        final boolean withExactFrequency = params.isWithExactFrequency()
+                && engineOf(params, collection, scanResult.getIndex()) != ScanEngine.FACET;
+        final List<List<ScanResult.Term>> chunks = frequencyChunks(scanResult.getTerms());
+        final List<CompletableFuture<Map<String, Long>>> futures = withExactFrequency ?
+                scanExecutorBean.submitAll(chunks.stream()
+                        .map(chunk -> frequencyLookup(collection, scanResult.getIndex(), chunk, deadline))
+                        .collect(Collectors.toList())) :
+                List.of();
+        final StreamingOutput output = outputStream -> {
+            try {
+                final Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+                for (int i = 0; i < chunks.size(); i++) {
+                    final Map<String, Long> frequencies = withExactFrequency ?
+                            awaitFrequencies(futures.get(i), scanResult.getIndex(), deadline) : null;
+                    for (ScanResult.Term term : chunks.get(i)) {
+                        // The scan result may be shared through the cache,
+                        // so its terms are copied rather than adjusted
+                        final ScanResult.Term streamed = withExactFrequency ?
+                                adjustedCopy(term, frequencies != null ? frequencies.get(term.getValue()) : null) :
+                                term;
+                        writer.write(NDJSON_WRITER.writeValueAsString(streamed));
+                        writer.write('\n');
+                    }
+                    writer.flush();
+                }
+            } finally {
+                futures.forEach(future -> future.cancel(false));
+            }
+        };
+        final Response.ResponseBuilder response = Response.ok(output);
+        if (scanResult.getMissingShards() != null) {
+            response.header(MISSING_SHARDS_HEADER, String.join(",", scanResult.getMissingShards()));
+        }
+        if (Boolean.TRUE.equals(scanResult.getTruncated())) {
+            response.header(TRUNCATED_HEADER, true);
+        }
+        return response.build();
+    }
+
+    /**
+     * Scans database index for a term or a phrase pushing results as
+     * server-sent events
+     * <p>
+     * A scan event carrying the serialized {@link ScanResult} with the
+     * frequencies found by the index scan is sent as soon as the index has
+     * been scanned. When exact frequencies are requested, each completed
+     * lookup is followed by a frequency event carrying the serialized
+     * {@link ScanResult.Term}s it adjusted, and terms whose exact
+     * frequency could not be determined within the deadline of the scan
+     * are sent in a final frequency event with exact false. The stream
+     * ends with a complete event, or an error event carrying a
+     * description of the failure.
+     * </p>
+     * @param eventSink sink receiving the events
+     * @param sse event factory
+     * @param params scan parameters, see {@link ScanParams}
+     * @throws WebApplicationException on bad request
+     * @see #scan(ScanParams)
+     */
+    @GET
+    @Path("events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @AccessLogged
+    public void scanEvents(@Context SseEventSink eventSink, @Context Sse sse, @BeanParam ScanParams params)
+            throws WebApplicationException {
+        if (isMultiIndex(params)) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("events are not supported when scanning several indexes")
+                            .build());
+        }
+        final String collection = hasCursor(params) ?
+                decodeCursor(params.getCursor()).collection() : collectionOf(params);
+        final Deadline deadline = deadlineOf(params);
+        // Exact frequencies are pushed as frequency events
+        scanStage(params, false, deadline, true, new HashMap<>())
+                .thenCompose(scanResult -> {
+                    sendEvent(eventSink, sse, "scan", scanResult);
+                    // Facet counts are exact already
+                    return params.isWithExactFrequency()
+                            && engineOf(params, collection, scanResult.getIndex()) != ScanEngine.FACET ?
+                            pushTermFrequencies(eventSink, sse, collection, scanResult, deadline) :
+                            CompletableFuture.completedFuture(null);
+                })
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        final RuntimeException exception = convertException(e);
+                        sendEvent(eventSink, sse, "error", exception instanceof WebApplicationException ?
+                                ((WebApplicationException) exception).getResponse().getEntity() :
+                                exception.getMessage());
+                    } else {
+                        sendEvent(eventSink, sse, "complete", "");
+                    }
+                    eventSink.close();
+                });
+    }
+
+    /**
+     * Runs several scans in parallel
+     * <p>
+     * Scans sharing collection, field type and term share the
+     * normalization of the term. Scans of several indexes are always
+     * merged into a single result.
+     * </p>
+     * @param asyncResponse response resumed with the combined result
+     * @param scans list of scan parameters, see {@link ScanParams}
+     * @throws WebApplicationException on bad request
+     * @see #scan(ScanParams)
+     */
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML,
+            CborMapperProvider.APPLICATION_CBOR, SmileMapperProvider.APPLICATION_SMILE })
+    @AccessLogged
+    public void scanBatch(@Suspended AsyncResponse asyncResponse, List<ScanParams> scans)
+            throws WebApplicationException {
+        if (scans == null || scans.isEmpty() || scans.size() > batchMaxSize) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("batch must contain between 1 and " + batchMaxSize + " scans")
+                            .build());
+        }
+        final Map<List<String>, CompletableFuture<String>> normalizations = new HashMap<>();
+        final List<CompletableFuture<ScanResult>> futures = new ArrayList<>(scans.size());
+        for (ScanParams params : scans) {
+            futures.add(scanStage(params, params.isWithExactFrequency(), deadlineOf(params),
+                    true, normalizations));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((ignore, e) -> {
+            if (e != null) {
+                asyncResponse.resume(convertException(e));
+            } else {
+                asyncResponse.resume(Response.ok(new ScanResults(futures.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()))).build());
+            }
+        });
+    }
+
+    /* Per-index results when scanning several indexes without merging them,
+       otherwise a single result */
+    CompletableFuture<?> entityStage(ScanParams params, boolean async)
+            throws WebApplicationException {
+        final Deadline deadline = deadlineOf(params);
+        if (isMultiIndex(params) && !params.isMerge()) {
+            return multiIndexScanStage(params, params.isWithExactFrequency(), deadline, async, new HashMap<>())
+                    .thenApply(ScanResults::new);
+        }
+        return scanStage(params, params.isWithExactFrequency(), deadline, async, new HashMap<>());
+    }
+
+    /* Chains the steps of a scan as completion stages. When async is true,
+       the blocking solr requests are run on the scan executor, otherwise
+       they are run by the calling thread. The shard requests of the shards
+       engine and the exact frequency lookups are always fanned out on the
+       scan executor, and the steps following them run in the executor
+       thread completing the last of them. All stages share a single
+       deadline. When it expires during the exact frequency phase,
+       outstanding lookups are cancelled and the affected terms are
+       returned with their index scan frequencies marked as not exact,
+       as are the terms of lookups failing otherwise. Exact frequencies are
+       looked up only when withExactFrequency is true, overriding the
+       params of the scan resource methods looking them up themselves.
+       Normalizations are looked up in and added to the given map keyed on
+       collection, field type and term. */
+    CompletableFuture<ScanResult> scanStage(ScanParams params, boolean withExactFrequency, Deadline deadline,
+                                            boolean async,
+                                            Map<List<String>, CompletableFuture<String>> normalizations)
+            throws WebApplicationException {
+        if (hasCursor(params)) {
+            return cursorScanStage(params, withExactFrequency, deadline, async);
+        }
+        if (isMultiIndex(params)) {
+            return multiIndexScanStage(params, withExactFrequency, deadline, async, normalizations)
+                    .thenApply(scanResults -> ScanResult.merge(scanResults, params.getSize()));
+        }
+        verifyStringParam("term", params.getTerm());
+        verifyStringParam("index", params.getIndex());
+        final String collection = collectionOf(params);
+        final String index = scanMapBean.resolve(collection, params.getIndex());
+        LOGGER.info("Index parameter {} resolved to {}", params.getIndex(), index);
+        final ScanEngine engine = engineOf(params, collection, index);
+        verifyEngine(params, engine, params.getPos());
+
+        return normalizationStage(collection, params, deadline, normalizations)
+                .thenCompose(term -> {
+                    final Optional<ScanResultCacheBean.Key> cacheKey = scanResultCacheBean.keyOf(
+                            collection, index, term, params.getPos(), params.getSize(), params.getInclude(),
+                            withExactFrequency, engine, params.getFq());
+                    final Optional<ScanResult> cachedScanResult = cacheKey.flatMap(scanResultCacheBean::get);
+                    if (cachedScanResult.isPresent()) {
+                        return CompletableFuture.completedFuture(cachedScanResult.get());
+                    }
+                    return scanTermsStage(collection, index, term, params, engine, deadline, async)
+                            .orTimeout(deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                            .thenCompose(scanResult -> needsExactFrequencies(withExactFrequency, engine) ?
+                                    adjustTermFrequencies(collection, index, scanResult, deadline) :
+                                    CompletableFuture.completedFuture(scanResult))
+                            .thenApply(scanResult -> {
+                                // Partial results and results degraded by
+                                // the deadline are not cached
+                                if (cacheKey.isPresent() && isCacheable(scanResult)) {
+                                    scanResultCacheBean.put(cacheKey.get(), scanResult);
+                                }
+                                return scanResult;
+                            });
+                });
+    }
+
+    /* Continues a scan from a cursor token. The cursor carries collection
+       and resolved index, so neither alias resolution nor normalization
+       is needed. Results are not cached. */
+    CompletableFuture<ScanResult> cursorScanStage(ScanParams params, boolean withExactFrequency,
+                                                  Deadline deadline, boolean async)
+            throws WebApplicationException {
+        final ScanCursor cursor = decodeCursor(params.getCursor());
+        final ScanEngine engine = engineOf(params, cursor.collection(), cursor.index());
+        verifyEngine(params, engine, ScanPos.FIRST);
+
+        return scanIndexStage(cursor.collection(), cursor.index(), cursor.bound().term(), ScanPos.FIRST,
+                        cursor.bound().inclusive(), params.getSize(), params, engine, deadline, async)
+                .thenApply(scanResult -> withCursors(scanResult, cursor.collection(), cursor.index(), cursor,
+                        scanResult.getTerms().size() >= params.getSize()))
+                .orTimeout(deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                .thenCompose(scanResult -> needsExactFrequencies(withExactFrequency, engine) ?
+                        adjustTermFrequencies(cursor.collection(), cursor.index(), scanResult, deadline) :
+                        CompletableFuture.completedFuture(scanResult));
+    }
+
+    /* Scans several comma separated indexes using a single multi-field
+       terms request, returning a result for each distinct index in the
+       order given. Results are not cached. */
+    CompletableFuture<List<ScanResult>> multiIndexScanStage(ScanParams params, boolean withExactFrequency,
+                                                            Deadline deadline, boolean async,
+                                                            Map<List<String>, CompletableFuture<String>> normalizations)
+            throws WebApplicationException {
+        verifyStringParam("term", params.getTerm());
+        verifyStringParam("index", params.getIndex());
+        if (hasFilterQuery(params)) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("fq is not supported when scanning several indexes")
+                            .build());
+        }
+        final String collection = collectionOf(params);
+        final List<String> indexes = Arrays.stream(params.getIndex().split(","))
+                .map(String::trim)
+                .filter(index -> !index.isEmpty())
+                .map(index -> scanMapBean.resolve(collection, index))
+                .distinct()
+                .collect(Collectors.toList());
+        LOGGER.info("Index parameter {} resolved to {}", params.getIndex(), indexes);
+
+        return normalizationStage(collection, params, deadline, normalizations)
+                .thenCompose(term -> supply(() -> executeMultiIndexScan(
+                                collection, indexes, term, params, deadline), async)
+                        .orTimeout(deadline.remainingMillis(), TimeUnit.MILLISECONDS))
+                .thenCompose(scanResults -> {
+                    if (!withExactFrequency) {
+                        return CompletableFuture.completedFuture(scanResults);
+                    }
+                    final List<CompletableFuture<ScanResult>> adjusted = scanResults.stream()
+                            .map(scanResult -> adjustTermFrequencies(
+                                    collection, scanResult.getIndex(), scanResult, deadline))
+                            .collect(Collectors.toList());
+                    return CompletableFuture.allOf(adjusted.toArray(new CompletableFuture[0]))
+                            .thenApply(ignore -> adjusted.stream()
+                                    .map(CompletableFuture::join)
+                                    .collect(Collectors.toList()));
+                });
+    }
+
+    /* Scans the index from the normalized term. Only a pos first scan starts
+       a page from which to page back to, the terms of a pos last scan
+       being those at the start of the index up to the term. */
+    private CompletableFuture<ScanResult> scanTermsStage(String collection, String index, String term,
+                                                         ScanParams params, ScanEngine engine, Deadline deadline,
+                                                         boolean async) {
+        final ScanCursor page = params.getPos() == ScanPos.FIRST ?
+                new ScanCursor(collection, index, new ScanCursor.Bound(term, true), List.of()) : null;
+        return scanIndexStage(collection, index, term, params.getPos(), true,
+                        params.getSize(), params, engine, deadline, async)
+                .thenApply(scanResult -> withCursors(scanResult, collection, index, page,
+                        scanResult.getTerms().size() >= params.getSize()));
+    }
+
+    private String normalizeTermByFieldType(String collection, String fieldType, String term) {
+        return scanTermAdjusterBean.analyzeByFieldType(collection, fieldType, term);
+    }
+
+    private String collectionOf(ScanParams params) {
+        final String collection = params.getCollection() != null && !params.getCollection().trim().isEmpty() ?
+                params.getCollection() : solrClientFactoryBean.getDefaultCollection();
+        if (LOGGER.isDebugEnabled()) {
+            solrClientFactoryBean.logLiveReplicas(collection);
+        }
+        return collection;
+    }
+
+    private Deadline deadlineOf(ScanParams params) {
+        return Deadline.after(params.getTimeout() > 0 ? params.getTimeout() : defaultTimeoutMs);
+    }
+
+    /* Cached normalizations are returned directly. Otherwise the field
+       analysis request, whose socket timeout cannot be bounded by the
+       deadline, is always run on the scan executor, so that waiting
+       for it ends when the deadline expires. */
+    private CompletableFuture<String> normalizationStage(String collection, ScanParams params, Deadline deadline,
+            Map<List<String>, CompletableFuture<String>> normalizations) {
+        return normalizations.computeIfAbsent(List.of(collection, params.getFieldType(), params.getTerm()),
+                key -> scanTermAdjusterBean.getCachedNormalization(collection, params.getFieldType(), params.getTerm())
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> scanExecutorBean.submit(() -> normalizeTermByFieldType(
+                                        collection, params.getFieldType(), params.getTerm()))
+                                .orTimeout(deadline.remainingMillis(), TimeUnit.MILLISECONDS)));
+    }
+
+    private static boolean hasCursor(ScanParams params) {
+        return params.getCursor() != null && !params.getCursor().isEmpty();
+    }
+
+    private static ScanCursor decodeCursor(String token) throws WebApplicationException {
+        try {
+            return ScanCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("cursor parameter is malformed")
+                            .build());
+        }
+    }
+
+    /* The engine named by the request, otherwise the engine
+       configured for the index, otherwise terms */
+    private ScanEngine engineOf(ScanParams params, String collection, String index) {
+        if (params.getEngine() != null) {
+            return params.getEngine();
+        }
+        return scanMapBean.engineOf(collection, index).orElse(ScanEngine.TERMS);
+    }
+
+    /* Facet counts are exact already */
+    private static boolean needsExactFrequencies(boolean withExactFrequency, ScanEngine engine) {
+        return withExactFrequency && engine != ScanEngine.FACET;
+    }
+
+    private static boolean hasFilterQuery(ScanParams params) {
+        return params.getFq() != null && !params.getFq().trim().isEmpty();
+    }
+
+    private static void verifyEngine(ScanParams params, ScanEngine engine, ScanPos pos)
+            throws WebApplicationException {
+        if ((engine == ScanEngine.FACET || engine == ScanEngine.SHARDS) && pos != ScanPos.FIRST) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("pos " + pos.name().toLowerCase() + " is not supported by the "
+                                    + engine.name().toLowerCase() + " engine")
+                            .build());
+        }
+        if (engine != ScanEngine.FACET && hasFilterQuery(params)) {
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("fq is only supported by the facet engine")
+                            .build());
+        }
+    }
+
+    private static boolean isMultiIndex(ScanParams params) {
+        return !hasCursor(params) && params.getIndex() != null && params.getIndex().contains(",");
+    }
+
+    /* Scans a single index using the given engine */
+    private CompletableFuture<ScanResult> scanIndexStage(String collection, String index, String term, ScanPos pos,
+                                                         boolean inclusive, int size, ScanParams params,
+                                                         ScanEngine engine, Deadline deadline, boolean async) {
+        if (engine == ScanEngine.FACET) {
+            return supply(() -> facetScanBean.scan(collection, index, term, inclusive, size, params.getInclude(),
+                    params.getFq(), deadline), async);
+        }
+        if (engine == ScanEngine.SHARDS) {
+            // The shard requests always run in parallel on the scan executor,
+            // a synchronous scan continues in the thread completing them
+            final CompletableFuture<ScanResult> shardScan = shardScanBean.scan(collection, index, term, inclusive,
+                    size, params.getInclude(), params.isShardsTolerant(), deadline);
+            if (!async) {
+                return shardScan.thenApply(scanResult -> verifyShardScan(collection, index, scanResult, deadline));
+            }
+            return shardScan.thenCompose(scanResult ->
+                    supply(() -> verifyShardScan(collection, index, scanResult, deadline), true));
+        }
+        return supply(() -> executeScan(collection, index, term, pos, inclusive, size, params.getInclude(), deadline),
+                async);
+    }
+
+    private ScanResult verifyShardScan(String collection, String index, ScanResult scanResult,
+                                       Deadline deadline) throws TritonException {
+        if (scanResult.getTerms().isEmpty()) {
+            verifyIndex(collection, index, deadline);
+        }
+        return scanResult;
+    }
+
+    private ScanResult executeScan(String collection, String index, String term, ScanPos pos, boolean inclusive,
+                                   int size, String include, Deadline deadline) throws TritonException {
+        try {
+            final SolrQuery query = new SolrQuery()
+                    .setRequestHandler("/terms")
+                    .setTerms(true)
+                    .setTermsLimit(size)
+                    .setTermsSortString("index")
+                    .addTermsField(index)
+                    .setTimeAllowed(deadline.timeAllowedMillis());
+            replicaRouterBean.preferFastReplicas(query);
             if (pos == ScanPos.FIRST) {
-                solrScan.withLower(term).withLowerInclusive(true);
+                query.setTermsLower(term).setTermsLowerInclusive(inclusive);
             } else {
-                solrScan.withUpper(term).withUpperInclusive(true);
+                query.setTermsUpper(term).setTermsUpperInclusive(inclusive);
             }
             if (!include.isEmpty()) {
-                solrScan.withRegex(include);
+                query.setTermsRegex(include);
             }
-            scanResult = ScanResult.of(solrScan.execute());
+            final TermsResponse termsResponse = hedgedRequestBean.execute(collection,
+                    solrClientFactoryBean.getCloudSolrClient(), deadline,
+                    (solrClient, c) -> solrClient.query(c, query)).getTermsResponse();
+            final ScanResult scanResult = ScanResult.of(termsResponse, index);
             if (scanResult.getTerms().isEmpty()) {
-                verifyIndex(cloudSolrClient, collection, scanResult.getIndex());
+                verifyIndex(collection, index, deadline);
             }
+            return scanResult;
+        } catch (IOException | SolrServerException e) {
+            throw new TritonException(e);
+        }
+    }
 
-            if (withExactFrequency) {
-                adjustTermFrequencies(collection, index, scanResult);
+    private List<ScanResult> executeMultiIndexScan(String collection, List<String> indexes, String term,
+                                                   ScanParams params, Deadline deadline) throws TritonException {
+        try {
+            final SolrQuery query = new SolrQuery()
+                    .setRequestHandler("/terms")
+                    .setTerms(true)
+                    .setTermsLimit(params.getSize())
+                    .setTermsSortString("index")
+                    .setTimeAllowed(deadline.timeAllowedMillis());
+            indexes.forEach(query::addTermsField);
+            replicaRouterBean.preferFastReplicas(query);
+            if (params.getPos() == ScanPos.FIRST) {
+                query.setTermsLower(term).setTermsLowerInclusive(true);
+            } else {
+                query.setTermsUpper(term).setTermsUpperInclusive(true);
             }
-        } catch (SolrException e) {
-            convertSolrExceptionAndThrow(e);
+            if (!params.getInclude().isEmpty()) {
+                query.setTermsRegex(params.getInclude());
+            }
+            final TermsResponse termsResponse = hedgedRequestBean.execute(collection,
+                    solrClientFactoryBean.getCloudSolrClient(), deadline,
+                    (solrClient, c) -> solrClient.query(c, query)).getTermsResponse();
+            final List<ScanResult> scanResults = new ArrayList<>(indexes.size());
+            for (String index : indexes) {
+                final ScanResult scanResult = ScanResult.of(termsResponse, index);
+                if (scanResult.getTerms().isEmpty()) {
+                    verifyIndex(collection, index, deadline);
+                }
+                scanResults.add(scanResult);
+            }
+            return scanResults;
         } catch (IOException | SolrServerException e) {
             throw new TritonException(e);
         }
-        return Response.ok(scanResult).build();
     }
 
-    // This method exists for easy partial mocking of solr
-    // functionality during testing
-    SolrScan createSolrScan(CloudSolrClient cloudSolrClient, String collection) {
-        return new SolrScan(cloudSolrClient, collection)
-                .withSort(SolrScan.SortType.INDEX);
+    private CompletableFuture<ScanResult> adjustTermFrequencies(String collection, String index,
+                                                                ScanResult scanResult, Deadline deadline) {
+        final List<ScanResult.Term> terms = scanResult.getTerms();
+        final List<CompletableFuture<Map<String, Long>>> futures = scanExecutorBean.submitAll(
+                frequencyChunks(terms).stream()
+                        .map(chunk -> frequencyLookup(collection, index, chunk, deadline))
+                        .collect(Collectors.toList()));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                .handle((ignore, e) -> {
+                    // Cancels lookups still outstanding when the deadline expired,
+                    // the terms they cover, as well as those of failed lookups,
+                    // keep their index scan frequencies
+                    futures.forEach(future -> future.cancel(false));
+                    final Map<String, Long> frequencies = new HashMap<>(terms.size());
+                    for (CompletableFuture<Map<String, Long>> future : futures) {
+                        try {
+                            frequencies.putAll(future.join());
+                        } catch (CancellationException ce) {
+                            LOGGER.info("Exact frequency lookup for {} cancelled by deadline", index);
+                        } catch (CompletionException ce) {
+                            if (ce.getCause() instanceof DeadlineExpiredException) {
+                                LOGGER.info("Exact frequency lookup for {} exceeded deadline", index);
+                            } else {
+                                LOGGER.error("Exact frequency lookup for {} failed", index, ce.getCause());
+                            }
+                        }
+                    }
+                    for (ScanResult.Term term : terms) {
+                        final Long frequency = frequencies.get(term.getValue());
+                        if (frequency != null) {
+                            term.setFrequency(frequency);
+                        } else {
+                            term.setExact(false);
+                        }
+                    }
+                    return scanResult;
+                });
+    }
+
+    /* Sets the cursor tokens of a non-empty result scanned as the page of
+       the given cursor, or null if it does not start a page. The next token
+       is only set when more terms may follow, that is when the result is
+       full or truncated, and the previous token only when the bound of the
+       previous page is known, since the terms component can not scan
+       backward. */
+    private static ScanResult withCursors(ScanResult scanResult, String collection, String index, ScanCursor page,
+                                          boolean full) {
+        final List<ScanResult.Term> terms = scanResult.getTerms();
+        if (terms.isEmpty()) {
+            return scanResult;
+        }
+        if (page != null) {
+            page.previous().ifPresent(previous -> scanResult.setPrevious(previous.encode()));
+        }
+        if (full || Boolean.TRUE.equals(scanResult.getTruncated())) {
+            final String lastTerm = terms.get(terms.size() - 1).getValue();
+            scanResult.setNext((page != null ? page.next(lastTerm) :
+                    new ScanCursor(collection, index, new ScanCursor.Bound(lastTerm, false), List.of())).encode());
+        }
+        return scanResult;
+    }
+
+    private List<List<ScanResult.Term>> frequencyChunks(List<ScanResult.Term> terms) {
+        final int batchSize = Math.max(1, frequencyBatchSize);
+        final List<List<ScanResult.Term>> chunks = new ArrayList<>();
+        for (int i = 0; i < terms.size(); i += batchSize) {
+            chunks.add(terms.subList(i, Math.min(i + batchSize, terms.size())));
+        }
+        return chunks;
     }
 
-    // This method exists for easy partial mocking of solr
-    // functionality during testing
-    SolrSearch createSolrSearch(CloudSolrClient cloudSolrClient, String collection) {
-        return new SolrSearch(cloudSolrClient, collection);
+    private Supplier<Map<String, Long>> frequencyLookup(String collection, String index,
+                                                        List<ScanResult.Term> chunk, Deadline deadline) {
+        final List<String> values = chunk.stream()
+                .map(ScanResult.Term::getValue)
+                .collect(Collectors.toList());
+        return () -> scanTermAdjusterBean.getTermFrequencies(collection, index, values, deadline);
     }
 
-    private String normalizeTermByFieldType(String collection, String fieldType, String term) {
-        return scanTermAdjusterBean.normalizeByFieldType(collection, fieldType, term);
+    /* Pushes a frequency event for each chunk of terms as soon as its exact
+       frequencies are known. When the deadline expires, outstanding lookups
+       are cancelled and the chunks not yet pushed are sent marked as not
+       exact. The terms of the scan result, which may be shared through the
+       cache, are copied rather than adjusted. */
+    private CompletableFuture<Void> pushTermFrequencies(SseEventSink eventSink, Sse sse, String collection,
+                                                        ScanResult scanResult, Deadline deadline) {
+        final List<List<ScanResult.Term>> chunks = frequencyChunks(scanResult.getTerms());
+        final List<CompletableFuture<Map<String, Long>>> futures = scanExecutorBean.submitAll(chunks.stream()
+                .map(chunk -> frequencyLookup(collection, scanResult.getIndex(), chunk, deadline))
+                .collect(Collectors.toList()));
+        final List<AtomicBoolean> pushed = new ArrayList<>(chunks.size());
+        final List<CompletableFuture<Void>> pushes = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            final List<ScanResult.Term> chunk = chunks.get(i);
+            final AtomicBoolean chunkPushed = new AtomicBoolean();
+            pushed.add(chunkPushed);
+            pushes.add(futures.get(i).thenAccept(frequencies -> {
+                if (chunkPushed.compareAndSet(false, true)) {
+                    sendEvent(eventSink, sse, "frequency", chunk.stream()
+                            .map(term -> adjustedCopy(term, frequencies.get(term.getValue())))
+                            .collect(Collectors.toList()));
+                }
+            }));
+        }
+        return CompletableFuture.allOf(pushes.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, deadline.remainingMillis(), TimeUnit.MILLISECONDS)
+                .handle((ignore, e) -> {
+                    futures.forEach(future -> future.cancel(false));
+                    if (e != null) {
+                        LOGGER.error("Exact frequency lookup for {} failed", scanResult.getIndex(), e);
+                    }
+                    final List<ScanResult.Term> approximateTerms = new ArrayList<>();
+                    for (int i = 0; i < chunks.size(); i++) {
+                        if (pushed.get(i).compareAndSet(false, true)) {
+                            chunks.get(i).forEach(term -> approximateTerms.add(adjustedCopy(term, null)));
+                        }
+                    }
+                    if (!approximateTerms.isEmpty()) {
+                        LOGGER.info("Exact frequency lookups for {} did not complete within deadline",
+                                scanResult.getIndex());
+                        sendEvent(eventSink, sse, "frequency", approximateTerms);
+                    }
+                    return null;
+                });
+    }
+
+    private static ScanResult.Term adjustedCopy(ScanResult.Term term, Long frequency) {
+        final ScanResult.Term copy = new ScanResult.Term(term.getValue(),
+                frequency != null ? frequency : term.getFrequency());
+        if (frequency == null) {
+            copy.setExact(false);
+        }
+        return copy;
+    }
+
+    private static void sendEvent(SseEventSink eventSink, Sse sse, String name, Object data) {
+        // Events are sent from the threads completing the lookups
+        synchronized (eventSink) {
+            eventSink.send(sse.newEventBuilder()
+                    .name(name)
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(data)
+                    .build());
+        }
     }
 
-    private void adjustTermFrequencies(String collection, String index, ScanResult scanResult)
-            throws TritonException {
+    /* Waits for the exact frequencies of a chunk of terms until the deadline
+       expires, returning null if they could not be determined */
+    private static Map<String, Long> awaitFrequencies(CompletableFuture<Map<String, Long>> future, String index,
+                                                      Deadline deadline) {
         try {
-            final List<ScanResult.Term> terms = scanResult.getTerms();
-            final List<Future<ScanResult.Term>> futures = new ArrayList<>(terms.size());
-            for (ScanResult.Term term : terms) {
-                futures.add(scanTermAdjusterBean.adjustTermFrequency(collection, index, term));
-            }
-            for (Future<ScanResult.Term> future : futures) {
-                future.get(10, TimeUnit.SECONDS);
+            return future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            LOGGER.info("Exact frequency lookup for {} cancelled by deadline", index);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DeadlineExpiredException) {
+                LOGGER.info("Exact frequency lookup for {} exceeded deadline", index);
+            } else {
+                LOGGER.error("Exact frequency lookup for {} failed", index, e.getCause());
             }
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            throw new TritonException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static boolean isCacheable(ScanResult scanResult) {
+        return scanResult.getMissingShards() == null && !Boolean.TRUE.equals(scanResult.getTruncated())
+                && scanResult.getTerms().stream()
+                .noneMatch(term -> Boolean.FALSE.equals(term.getExact()));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> step, boolean async) {
+        if (async) {
+            return scanExecutorBean.submit(step);
+        }
+        try {
+            return CompletableFuture.completedFuture(step.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -164,25 +867,40 @@ public class ScanBean {
         }
     }
 
-    private void verifyIndex(CloudSolrClient cloudSolrClient, String collection, String index)
-            throws IOException, SolrServerException {
+    private void verifyIndex(String collection, String index, Deadline deadline) throws TritonException {
         /* Since a solr terms request does not report an error
            in case of an unknown index, we do a simple search
            instead. */
-        createSolrSearch(cloudSolrClient, collection)
-                .withQuery(index + ":test")
-                .withRows(0)
-                .execute();
+        final SolrQuery query = replicaRouterBean.preferFastReplicas(new SolrQuery(index + ":test")
+                .setRows(0)
+                .setTimeAllowed(deadline.timeAllowedMillis()));
+        try {
+            hedgedRequestBean.execute(collection, solrClientFactoryBean.getCloudSolrClient(), deadline,
+                    (solrClient, c) -> solrClient.query(c, query));
+        } catch (IOException | SolrServerException e) {
+            throw new TritonException(e);
+        }
     }
 
-    private void convertSolrExceptionAndThrow(SolrException e)
-            throws TritonException, WebApplicationException {
-        if (e.code() == 400) {
-            throw new WebApplicationException(
+    private RuntimeException convertException(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return convertException(e.getCause());
+        }
+        if (e instanceof SolrException && ((SolrException) e).code() == 400) {
+            return new WebApplicationException(
                     Response.status(Response.Status.BAD_REQUEST)
                             .entity(e.getMessage())
                             .build());
         }
-        throw new TritonException(e);
+        if (e instanceof TimeoutException || e instanceof DeadlineExpiredException) {
+            return new WebApplicationException(
+                    Response.status(Response.Status.GATEWAY_TIMEOUT)
+                            .entity("Scan did not complete within its deadline")
+                            .build());
+        }
+        if (e instanceof WebApplicationException || e instanceof TritonException) {
+            return (RuntimeException) e;
+        }
+        return new TritonException(e);
     }
 }
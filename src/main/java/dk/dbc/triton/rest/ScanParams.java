@@ -0,0 +1,251 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import dk.dbc.triton.core.ScanEngine;
+import dk.dbc.triton.core.ScanPos;
+import jakarta.ws.rs.DefaultValue;
+import jakarta.ws.rs.QueryParam;
+
+/**
+ * Scan request parameters shared by the scan resource methods
+ * <p>
+ * Bound from query parameters for single scans and from JSON objects
+ * with the same property names for batch scans.
+ * </p>
+ */
+public class ScanParams {
+    @QueryParam("term")
+    private String term;
+
+    @QueryParam("index")
+    private String index;
+
+    @QueryParam("collection")
+    private String collection;
+
+    @QueryParam("pos")
+    @DefaultValue("first")
+    private ScanPos pos = ScanPos.FIRST;
+
+    @QueryParam("size")
+    @DefaultValue("20")
+    private int size = 20;
+
+    @QueryParam("include")
+    @DefaultValue("")
+    private String include = "";
+
+    @QueryParam("withExactFrequency")
+    @DefaultValue("true")
+    private boolean withExactFrequency = true;
+
+    @QueryParam("fieldType")
+    @DefaultValue("dbc-scan")
+    private String fieldType = "dbc-scan";
+
+    @QueryParam("merge")
+    @DefaultValue("false")
+    private boolean merge = false;
+
+    @QueryParam("cursor")
+    private String cursor;
+
+    @QueryParam("timeout")
+    @DefaultValue("0")
+    private long timeout = 0;
+
+    @QueryParam("engine")
+    private ScanEngine engine;
+
+    @QueryParam("shardsTolerant")
+    @DefaultValue("false")
+    private boolean shardsTolerant = false;
+
+    @QueryParam("fq")
+    private String fq;
+
+    /**
+     * @return index term
+     */
+    public String getTerm() {
+        return term;
+    }
+
+    public ScanParams withTerm(String term) {
+        this.term = term;
+        return this;
+    }
+
+    /**
+     * @return index field or index alias, or a comma separated list of
+     * these to scan several indexes in a single solr request
+     */
+    public String getIndex() {
+        return index;
+    }
+
+    public ScanParams withIndex(String index) {
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * @return solr collection, if null the value of environment variable
+     * DEFAULT_COLLECTION is used
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    public ScanParams withCollection(String collection) {
+        this.collection = collection;
+        return this;
+    }
+
+    /**
+     * @return preferred term position {first|last}, defaults to first
+     */
+    public ScanPos getPos() {
+        return pos;
+    }
+
+    public ScanParams withPos(ScanPos pos) {
+        this.pos = pos;
+        return this;
+    }
+
+    /**
+     * @return maximum number of entries to be returned, defaults to 20
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public ScanParams withSize(int size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * @return regular expression restricting the terms returned
+     */
+    public String getInclude() {
+        return include;
+    }
+
+    public ScanParams withInclude(String include) {
+        this.include = include;
+        return this;
+    }
+
+    /**
+     * @return whether or not to perform exact match search for each scan
+     * term to adjust term frequencies, defaults to true
+     */
+    public boolean isWithExactFrequency() {
+        return withExactFrequency;
+    }
+
+    public ScanParams withExactFrequency(boolean withExactFrequency) {
+        this.withExactFrequency = withExactFrequency;
+        return this;
+    }
+
+    /**
+     * @return field type whose analysis phases are used to normalize the
+     * input term before scanning, defaults to dbc-scan
+     */
+    public String getFieldType() {
+        return fieldType;
+    }
+
+    public ScanParams withFieldType(String fieldType) {
+        this.fieldType = fieldType;
+        return this;
+    }
+
+    /**
+     * @return whether or not to merge the results of scanning several
+     * comma separated indexes into a single result, defaults to false
+     */
+    public boolean isMerge() {
+        return merge;
+    }
+
+    public ScanParams withMerge(boolean merge) {
+        this.merge = merge;
+        return this;
+    }
+
+    /**
+     * @return next or previous token of an earlier scan result to continue
+     * from, when given the term, index, collection and pos parameters are
+     * ignored
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public ScanParams withCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * @return number of milliseconds the scan may take end-to-end,
+     * zero (the default) meaning the value of SCAN_TIMEOUT_MS
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public ScanParams withTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * @return how single index scans are executed {terms|shards|facet},
+     * if null the engine configured for the index in the scan map is used,
+     * defaulting to terms
+     */
+    public ScanEngine getEngine() {
+        return engine;
+    }
+
+    public ScanParams withEngine(ScanEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * @return whether or not a scan using the shards engine returns the
+     * terms of the shards answering in time when other shards fail,
+     * listing the failed shards in the result, defaults to false
+     */
+    public boolean isShardsTolerant() {
+        return shardsTolerant;
+    }
+
+    public ScanParams withShardsTolerant(boolean shardsTolerant) {
+        this.shardsTolerant = shardsTolerant;
+        return this;
+    }
+
+    /**
+     * @return filter query scoping a scan using the facet engine to the
+     * documents matching it
+     */
+    public String getFq() {
+        return fq;
+    }
+
+    public ScanParams withFq(String fq) {
+        this.fq = fq;
+        return this;
+    }
+}
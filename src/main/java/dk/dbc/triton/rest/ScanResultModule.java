@@ -0,0 +1,21 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import dk.dbc.triton.core.ScanResult;
+
+/**
+ * Registers the streaming serializers of the scan result model for
+ * the JSON based formats
+ */
+public class ScanResultModule extends SimpleModule {
+    public ScanResultModule() {
+        super("ScanResultModule");
+        addSerializer(ScanResult.class, new ScanResultSerializer());
+        addSerializer(ScanResult.Term.class, new TermSerializer());
+    }
+}
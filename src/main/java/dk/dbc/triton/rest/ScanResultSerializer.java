@@ -0,0 +1,59 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import dk.dbc.triton.core.ScanResult;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON serializer for {@link ScanResult}
+ * <p>
+ * Writes the same JSON as bean serialization using the inclusion rules
+ * of {@link JsonMapperProvider}, without the cost of reflection.
+ * </p>
+ */
+public class ScanResultSerializer extends StdSerializer<ScanResult> {
+    public ScanResultSerializer() {
+        super(ScanResult.class);
+    }
+
+    @Override
+    public void serialize(ScanResult scanResult, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject();
+        writeStringField(generator, "index", scanResult.getIndex());
+        if (scanResult.getTerms() != null && !scanResult.getTerms().isEmpty()) {
+            generator.writeArrayFieldStart("terms");
+            for (ScanResult.Term term : scanResult.getTerms()) {
+                TermSerializer.writeTerm(term, generator);
+            }
+            generator.writeEndArray();
+        }
+        writeStringField(generator, "next", scanResult.getNext());
+        writeStringField(generator, "previous", scanResult.getPrevious());
+        if (scanResult.getMissingShards() != null && !scanResult.getMissingShards().isEmpty()) {
+            generator.writeArrayFieldStart("missingShards");
+            for (String shard : scanResult.getMissingShards()) {
+                generator.writeString(shard);
+            }
+            generator.writeEndArray();
+        }
+        if (Boolean.TRUE.equals(scanResult.getTruncated())) {
+            generator.writeBooleanField("truncated", true);
+        }
+        generator.writeEndObject();
+    }
+
+    static void writeStringField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            generator.writeStringField(name, value);
+        }
+    }
+}
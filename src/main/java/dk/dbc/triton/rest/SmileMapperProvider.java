@@ -0,0 +1,36 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileMapper;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.ext.ContextResolver;
+import jakarta.ws.rs.ext.Provider;
+
+@Provider
+@Produces({ SmileMapperProvider.APPLICATION_SMILE })
+public class SmileMapperProvider implements ContextResolver<ObjectMapper> {
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    private final ObjectMapper objectMapper;
+
+    public SmileMapperProvider() {
+        objectMapper = new SmileMapper();
+        objectMapper.registerModule(new ScanResultModule());
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+    }
+
+    @Override
+    public ObjectMapper getContext(Class<?> aClass) {
+        return objectMapper;
+    }
+}
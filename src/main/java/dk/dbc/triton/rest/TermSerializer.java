@@ -0,0 +1,38 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import dk.dbc.triton.core.ScanResult;
+
+import java.io.IOException;
+
+/**
+ * Streaming JSON serializer for {@link ScanResult.Term}
+ */
+public class TermSerializer extends StdSerializer<ScanResult.Term> {
+    public TermSerializer() {
+        super(ScanResult.Term.class);
+    }
+
+    @Override
+    public void serialize(ScanResult.Term term, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        writeTerm(term, generator);
+    }
+
+    static void writeTerm(ScanResult.Term term, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        ScanResultSerializer.writeStringField(generator, "value", term.getValue());
+        generator.writeNumberField("frequency", term.getFrequency());
+        if (term.getExact() != null) {
+            generator.writeBooleanField("exact", term.getExact());
+        }
+        generator.writeEndObject();
+    }
+}
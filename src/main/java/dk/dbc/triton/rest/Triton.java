@@ -5,10 +5,15 @@
 
 package dk.dbc.triton.rest;
 
+import com.fasterxml.jackson.jakarta.rs.cbor.JacksonCBORProvider;
+import com.fasterxml.jackson.jakarta.rs.smile.JacksonSmileProvider;
 import com.fasterxml.jackson.jakarta.rs.xml.JacksonXMLProvider;
 import jakarta.ws.rs.ApplicationPath;
 import jakarta.ws.rs.core.Application;
 import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 
 import java.util.Set;
 
@@ -18,7 +23,10 @@ import java.util.Set;
  */
 @ApplicationPath("/")
 public class Triton extends Application {
-    static final Set<Class<?>> CLASSES = Set.of(ScanBean.class, RequestLogger.class, JacksonFeature.class, JacksonXMLProvider.class);
+    static final Set<Class<?>> CLASSES = Set.of(ScanBean.class, RequestLogger.class, JacksonFeature.class, JacksonXMLProvider.class,
+            JsonScanResultWriter.class, JsonScanResultsWriter.class, XmlScanResultWriter.class, XmlScanResultsWriter.class,
+            JacksonCBORProvider.class, JacksonSmileProvider.class,
+            EncodingFilter.class, GZipEncoder.class, DeflateEncoder.class);
 
     @Override
     public Set<Class<?>> getClasses() {
@@ -27,6 +35,7 @@ public class Triton extends Application {
 
     @Override
     public Set<Object> getSingletons() {
-        return Set.of(new JsonMapperProvider(), new XmlMapperProvider());
+        return Set.of(new JsonMapperProvider(), new XmlMapperProvider(),
+                new CborMapperProvider(), new SmileMapperProvider());
     }
 }
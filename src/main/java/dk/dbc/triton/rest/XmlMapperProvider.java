@@ -24,8 +24,7 @@ public class XmlMapperProvider implements ContextResolver<XmlMapper> {
         final JacksonXmlModule module = new JacksonXmlModule();
         module.setDefaultUseWrapper(true);
         xmlMapper = new XmlMapper(module);
-        xmlMapper.configure(SerializationFeature.INDENT_OUTPUT, true)
-            .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
+        xmlMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
             .setSerializationInclusion(JsonInclude.Include.NON_NULL)
             .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
     }
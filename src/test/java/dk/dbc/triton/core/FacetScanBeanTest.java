@@ -0,0 +1,107 @@
+package dk.dbc.triton.core;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.response.FacetField;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.params.FacetParams;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FacetScanBeanTest {
+    private static final String COLLECTION = "collection";
+    private static final String INDEX = "scan.mti";
+
+    private final SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+    private final CloudSolrClient cloudSolrClient = mock(CloudSolrClient.class);
+
+    @Test
+    void scan() throws IOException, SolrServerException {
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenReturn(facetResponse("b", 2, "c", 3));
+        final FacetScanBean facetScanBean = newFacetScanBean();
+
+        final ScanResult scanResult = facetScanBean.scan(COLLECTION, INDEX, "b", true, 2, "", "agency:870970",
+                Deadline.after(10000));
+        assertThat("terms", scanResult.getTerms(), is(List.of(
+                new ScanResult.Term("b", 2), new ScanResult.Term("c", 3))));
+
+        final ArgumentCaptor<SolrQuery> queryCaptor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(cloudSolrClient).query(eq(COLLECTION), queryCaptor.capture());
+        final SolrQuery query = queryCaptor.getValue();
+        assertThat("facet field", query.getFacetFields()[0], is(INDEX));
+        assertThat("facet sort", query.getFacetSortString(), is(FacetParams.FACET_SORT_INDEX));
+        assertThat("facet limit", query.getFacetLimit(), is(2));
+        assertThat("filter queries", List.of(query.getFilterQueries()),
+                hasItems("scan.mti:[b TO *]", "agency:870970"));
+    }
+
+    @Test
+    void skipsTermsBeforeTermFromMultiValuedDocuments() throws IOException, SolrServerException {
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenReturn(facetResponse("a", 1, "b", 2))
+                .thenReturn(facetResponse("c", 3));
+        final FacetScanBean facetScanBean = newFacetScanBean();
+
+        final ScanResult scanResult = facetScanBean.scan(COLLECTION, INDEX, "b", false, 2, "", null,
+                Deadline.after(10000));
+        assertThat("terms", scanResult.getTerms(), is(List.of(new ScanResult.Term("c", 3))));
+        verify(cloudSolrClient, times(2)).query(eq(COLLECTION), any(SolrQuery.class));
+    }
+
+    @Test
+    void stopsAfterMaxPages() throws IOException, SolrServerException {
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenReturn(facetResponse("a", 1, "aa", 2));
+        final FacetScanBean facetScanBean = newFacetScanBean();
+        facetScanBean.maxPages = 3;
+
+        final ScanResult scanResult = facetScanBean.scan(COLLECTION, INDEX, "b", true, 2, "", null,
+                Deadline.after(10000));
+        assertThat("terms", scanResult.getTerms(), is(List.of()));
+        assertThat("truncated", scanResult.getTruncated(), is(true));
+        verify(cloudSolrClient, times(3)).query(eq(COLLECTION), any(SolrQuery.class));
+    }
+
+    @Test
+    void expiredDeadline() {
+        final FacetScanBean facetScanBean = newFacetScanBean();
+        assertThrows(DeadlineExpiredException.class, () -> facetScanBean.scan(
+                COLLECTION, INDEX, "b", true, 2, "", null, Deadline.after(0)));
+    }
+
+    private static QueryResponse facetResponse(Object... valuesAndCounts) {
+        final FacetField facetField = new FacetField(INDEX);
+        for (int i = 0; i < valuesAndCounts.length; i += 2) {
+            facetField.add((String) valuesAndCounts[i], ((Integer) valuesAndCounts[i + 1]).longValue());
+        }
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getFacetField(INDEX)).thenReturn(facetField);
+        return queryResponse;
+    }
+
+    private FacetScanBean newFacetScanBean() {
+        when(solrClientFactoryBean.getCloudSolrClient()).thenReturn(cloudSolrClient);
+        final FacetScanBean facetScanBean = new FacetScanBean();
+        facetScanBean.solrClientFactoryBean = solrClientFactoryBean;
+        facetScanBean.hedgedRequestBean = HedgedRequestBeanTest.newDisabledHedgedRequestBean();
+        facetScanBean.replicaRouterBean = new ReplicaRouterBean();
+        facetScanBean.maxPages = 10;
+        return facetScanBean;
+    }
+}
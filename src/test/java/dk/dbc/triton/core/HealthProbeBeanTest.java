@@ -0,0 +1,58 @@
+package dk.dbc.triton.core;
+
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HealthProbeBeanTest {
+    private final SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+
+    @Test
+    void notProbedYet() {
+        final HealthProbeBean healthProbeBean = newHealthProbeBean(30000);
+        assertThat(healthProbeBean.readiness().call().getStatus(), is(HealthCheckResponse.Status.DOWN));
+        assertThat(healthProbeBean.liveness().call().getStatus(), is(HealthCheckResponse.Status.UP));
+    }
+
+    @Test
+    void solrReachable() {
+        when(solrClientFactoryBean.pingDefaultCollection()).thenReturn(true);
+        final HealthProbeBean healthProbeBean = newHealthProbeBean(30000);
+        healthProbeBean.probe();
+        assertThat(healthProbeBean.readiness().call().getStatus(), is(HealthCheckResponse.Status.UP));
+    }
+
+    @Test
+    void solrUnreachable() {
+        when(solrClientFactoryBean.pingDefaultCollection()).thenThrow(new TritonException("Unable to ping"));
+        final HealthProbeBean healthProbeBean = newHealthProbeBean(30000);
+        healthProbeBean.probe();
+        assertThat("readiness", healthProbeBean.readiness().call().getStatus(),
+                is(HealthCheckResponse.Status.DOWN));
+        assertThat("liveness", healthProbeBean.liveness().call().getStatus(),
+                is(HealthCheckResponse.Status.UP));
+    }
+
+    @Test
+    void staleProbeResult() throws InterruptedException {
+        when(solrClientFactoryBean.pingDefaultCollection()).thenReturn(true);
+        final HealthProbeBean healthProbeBean = newHealthProbeBean(10);
+        healthProbeBean.probe();
+        Thread.sleep(50);
+        assertThat("readiness", healthProbeBean.readiness().call().getStatus(),
+                is(HealthCheckResponse.Status.DOWN));
+        assertThat("liveness", healthProbeBean.liveness().call().getStatus(),
+                is(HealthCheckResponse.Status.DOWN));
+    }
+
+    private HealthProbeBean newHealthProbeBean(long staleAfterMs) {
+        final HealthProbeBean healthProbeBean = new HealthProbeBean();
+        healthProbeBean.solrClientFactoryBean = solrClientFactoryBean;
+        healthProbeBean.staleAfterMs = staleAfterMs;
+        return healthProbeBean;
+    }
+}
@@ -0,0 +1,257 @@
+package dk.dbc.triton.core;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.eclipse.microprofile.metrics.Counter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HedgedRequestBeanTest {
+    private static final String COLLECTION = "collection";
+    private static final String NODE_A = "http://a:8983/solr";
+    private static final String NODE_B = "http://b:8983/solr";
+    private static final String REPLICA_A = NODE_A + "/collection_shard1_replica_n1/";
+    private static final String REPLICA_A2 = NODE_A + "/collection_shard2_replica_n2/";
+    private static final String REPLICA_B = NODE_B + "/collection_shard1_replica_n3/";
+
+    private final SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+    private final SolrClient cloudClient = mock(SolrClient.class);
+    private final SolrClient primaryClient = mock(SolrClient.class);
+    private final SolrClient replicaClient = mock(SolrClient.class);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void disabled() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(false);
+        hedgedRequestBean.replicaRouterBean.enabled = false;
+        assertThat(hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::call),
+                is("cloud"));
+        verify(hedgedRequestBean.hedgesIssued, never()).inc();
+        // The request is left to the cloud client and its failover
+        verify(solrClientFactoryBean, never()).getLiveReplicaCoreUrls(COLLECTION);
+    }
+
+    @Test
+    void disabledFailureAfterDeadlineExpired() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(false);
+        hedgedRequestBean.replicaRouterBean.enabled = false;
+        assertThrows(DeadlineExpiredException.class, () -> hedgedRequestBean.execute(COLLECTION, cloudClient,
+                Deadline.after(100), (solrClient, collection) -> {
+                    sleep(200);
+                    throw new SolrServerException("Read timed out");
+                }));
+    }
+
+    @Test
+    void expiredDeadline() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        assertThrows(DeadlineExpiredException.class, () -> hedgedRequestBean.execute(COLLECTION, cloudClient,
+                Deadline.after(0), this::call));
+        verify(solrClientFactoryBean, never()).getLiveReplicaCoreUrls(COLLECTION);
+    }
+
+    @Test
+    void deadlineBoundsWaitForAnswer() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        when(solrClientFactoryBean.getLiveReplicaCoreUrls(COLLECTION)).thenReturn(List.of(REPLICA_A, REPLICA_A2));
+        assertThrows(DeadlineExpiredException.class, () -> hedgedRequestBean.execute(COLLECTION, cloudClient,
+                Deadline.after(200), this::slowPrimaryCall));
+    }
+
+    @Test
+    void failureAfterDeadlineExpired() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(false);
+        assertThrows(DeadlineExpiredException.class, () -> hedgedRequestBean.execute(COLLECTION, cloudClient,
+                Deadline.after(100), (solrClient, collection) -> {
+                    sleep(200);
+                    throw new SolrServerException("Read timed out");
+                }));
+    }
+
+    @Test
+    void routedWithoutHedging() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(false);
+        assertThat(hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::call),
+                is("primary"));
+        verify(hedgedRequestBean.hedgesIssued, never()).inc();
+        assertThat("latency recorded",
+                hedgedRequestBean.replicaRouterBean.scores.get(NODE_A).getLatencyMillis() < 100, is(true));
+    }
+
+    @Test
+    void primaryLatencyIsRecorded() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::call);
+        assertThat(hedgedRequestBean.replicaRouterBean.scores.get(NODE_A).getLatencyMillis() < 100, is(true));
+    }
+
+    @Test
+    void primaryAnswersInTime() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        assertThat(hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::call),
+                is("primary"));
+        verify(hedgedRequestBean.hedgesIssued, never()).inc();
+    }
+
+    @Test
+    void hedgeWins() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        assertThat(hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::slowPrimaryCall),
+                is("replica"));
+        verify(hedgedRequestBean.hedgesIssued).inc();
+        verify(hedgedRequestBean.hedgesWon, timeout(5000)).inc();
+    }
+
+    @Test
+    void hedgeGoesToAnotherNode() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        when(solrClientFactoryBean.getLiveReplicaCoreUrls(COLLECTION)).thenReturn(List.of(REPLICA_A, REPLICA_A2));
+        executor.execute(() -> {
+            sleep(200);
+            release.countDown();
+        });
+        assertThat(executeQuietly(hedgedRequestBean), is("primary"));
+        verify(hedgedRequestBean.hedgesIssued, never()).inc();
+    }
+
+    @Test
+    void noReplicaToSendTo() throws SolrServerException, IOException {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        when(solrClientFactoryBean.getLiveReplicaCoreUrls(COLLECTION)).thenReturn(List.of());
+        assertThat(hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::call), is("cloud"));
+        verify(hedgedRequestBean.hedgesIssued, never()).inc();
+    }
+
+    @Test
+    void pickReplicaExcludesNode() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        final List<String> coreUrls = List.of(REPLICA_A, REPLICA_A2, REPLICA_B);
+        assertThat("best ranked", hedgedRequestBean.pickReplica(coreUrls, null), is(Optional.of(REPLICA_A)));
+        assertThat("other node", hedgedRequestBean.pickReplica(coreUrls, NODE_A), is(Optional.of(REPLICA_B)));
+        assertThat("none", hedgedRequestBean.pickReplica(List.of(REPLICA_A, REPLICA_A2), NODE_A),
+                is(Optional.empty()));
+    }
+
+    @Test
+    void allRequestsFail() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        assertThrows(SolrServerException.class, () -> hedgedRequestBean.execute(COLLECTION, cloudClient,
+                Deadline.after(5000), (solrClient, collection) -> {
+                    if (solrClient == primaryClient) {
+                        sleep(100);
+                    }
+                    throw new SolrServerException("failed");
+                }));
+    }
+
+    @Test
+    void hedgeDelayFollowsPercentile() {
+        final HedgedRequestBean hedgedRequestBean = newHedgedRequestBean(true);
+        hedgedRequestBean.minDelayMs = 0;
+        for (int i = 1; i <= 100; i++) {
+            hedgedRequestBean.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(hedgedRequestBean.getHedgeDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(95)));
+        hedgedRequestBean.minDelayMs = 200;
+        assertThat("min delay", hedgedRequestBean.getHedgeDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(200)));
+    }
+
+    private String call(SolrClient solrClient, String collection) {
+        if (solrClient == cloudClient) {
+            return "cloud";
+        }
+        return solrClient == primaryClient ? "primary" : "replica";
+    }
+
+    private String slowPrimaryCall(SolrClient solrClient, String collection) throws SolrServerException {
+        if (solrClient == primaryClient) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new SolrServerException(e);
+            }
+        }
+        return call(solrClient, collection);
+    }
+
+    private String executeQuietly(HedgedRequestBean hedgedRequestBean) {
+        try {
+            return hedgedRequestBean.execute(COLLECTION, cloudClient, Deadline.after(5000), this::slowPrimaryCall);
+        } catch (SolrServerException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return bean neither hedging nor routing requests
+     */
+    public static HedgedRequestBean newDisabledHedgedRequestBean() {
+        final HedgedRequestBean hedgedRequestBean = new HedgedRequestBean();
+        hedgedRequestBean.replicaRouterBean = new ReplicaRouterBean();
+        return hedgedRequestBean;
+    }
+
+    private HedgedRequestBean newHedgedRequestBean(boolean enabled) {
+        final ManagedExecutorService executorService = mock(ManagedExecutorService.class);
+        doAnswer(invocation -> {
+            executor.execute(invocation.getArgument(0));
+            return null;
+        }).when(executorService).execute(any(Runnable.class));
+        when(solrClientFactoryBean.getLiveReplicaCoreUrls(COLLECTION)).thenReturn(List.of(REPLICA_B, REPLICA_A));
+        when(solrClientFactoryBean.getReplicaClient(REPLICA_A, cloudClient)).thenReturn(primaryClient);
+        when(solrClientFactoryBean.getReplicaClient(REPLICA_A2, cloudClient)).thenReturn(replicaClient);
+        when(solrClientFactoryBean.getReplicaClient(REPLICA_B, cloudClient)).thenReturn(replicaClient);
+        // Ranks node A first, making it receive the primary requests
+        final ReplicaRouterBean replicaRouterBean = new ReplicaRouterBean();
+        replicaRouterBean.enabled = true;
+        replicaRouterBean.decay = 0.5;
+        replicaRouterBean.errorThreshold = 0.5;
+        replicaRouterBean.record(NODE_A, TimeUnit.MILLISECONDS.toNanos(100), true);
+        replicaRouterBean.record(NODE_B, TimeUnit.MILLISECONDS.toNanos(200), true);
+        final HedgedRequestBean hedgedRequestBean = new HedgedRequestBean();
+        hedgedRequestBean.solrClientFactoryBean = solrClientFactoryBean;
+        hedgedRequestBean.executorService = executorService;
+        hedgedRequestBean.replicaRouterBean = replicaRouterBean;
+        hedgedRequestBean.enabled = enabled;
+        hedgedRequestBean.percentile = 95;
+        hedgedRequestBean.minDelayMs = 20;
+        hedgedRequestBean.hedgesIssued = mock(Counter.class);
+        hedgedRequestBean.hedgesWon = mock(Counter.class);
+        return hedgedRequestBean;
+    }
+}
@@ -0,0 +1,59 @@
+package dk.dbc.triton.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class LruCacheTest {
+    @Test
+    void evictsLeastRecentlyUsedWhenOverWeight() {
+        final LruCache<String, String> cache = new LruCache<>(5, String::length);
+        cache.put("a", "aa");
+        cache.put("b", "bb");
+        cache.get("a");
+        cache.put("c", "cc");
+
+        assertThat("a", cache.get("a"), is(Optional.of("aa")));
+        assertThat("b", cache.get("b"), is(Optional.empty()));
+        assertThat("c", cache.get("c"), is(Optional.of("cc")));
+        assertThat("weight", cache.getWeight(), is(4L));
+        assertThat("evictions", cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    void replacingEntryAdjustsWeight() {
+        final LruCache<String, String> cache = new LruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("a", "aa");
+        assertThat("weight", cache.getWeight(), is(2L));
+        assertThat("size", cache.size(), is(1));
+    }
+
+    @Test
+    void valuesHeavierThanBudgetAreNotCached() {
+        final LruCache<String, String> cache = new LruCache<>(2, String::length);
+        cache.put("a", "aaa");
+        assertThat(cache.get("a"), is(Optional.empty()));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        final LruCache<String, String> cache = new LruCache<>(10);
+        cache.put("a", "a");
+        cache.get("a");
+        cache.get("b");
+        assertThat("hits", cache.getHitCount(), is(1L));
+        assertThat("misses", cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    void disabledCache() {
+        final LruCache<String, String> cache = new LruCache<>(0);
+        cache.put("a", "a");
+        assertThat("enabled", cache.isEnabled(), is(false));
+        assertThat("a", cache.get("a"), is(Optional.empty()));
+    }
+}
@@ -0,0 +1,91 @@
+package dk.dbc.triton.core;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.common.params.ShardParams;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ReplicaRouterBeanTest {
+    private static final String NODE_A = "http://a:8983/solr";
+    private static final String NODE_B = "http://b:8983/solr";
+    private static final String NODE_C = "http://c:8983/solr";
+
+    @Test
+    void baseUrlOf() {
+        assertThat(ReplicaRouterBean.baseUrlOf(NODE_A + "/collection_shard1_replica_n1/"), is(NODE_A));
+        assertThat(ReplicaRouterBean.baseUrlOf(NODE_A + "/collection_shard1_replica_n1"), is(NODE_A));
+    }
+
+    @Test
+    void shardsPreferenceListsHealthyNodesFastestFirst() {
+        final ReplicaRouterBean replicaRouterBean = newReplicaRouterBean(true);
+        replicaRouterBean.record(NODE_A, millis(30), true);
+        replicaRouterBean.record(NODE_B, millis(10), true);
+        replicaRouterBean.record(NODE_C, millis(5), true);
+        replicaRouterBean.record(NODE_C, millis(5), false);
+        replicaRouterBean.record(NODE_C, millis(5), false);
+        replicaRouterBean.updateShardsPreference();
+
+        final SolrQuery query = replicaRouterBean.preferFastReplicas(new SolrQuery());
+        assertThat(query.get(ShardParams.SHARDS_PREFERENCE),
+                is("replica.location:" + NODE_B + ",replica.location:" + NODE_A));
+    }
+
+    @Test
+    void latencyScoreDecays() {
+        final ReplicaRouterBean replicaRouterBean = newReplicaRouterBean(true);
+        replicaRouterBean.record(NODE_A, millis(10), true);
+        replicaRouterBean.record(NODE_B, millis(20), true);
+        replicaRouterBean.updateShardsPreference();
+        assertThat("A first", replicaRouterBean.getShardsPreference(),
+                is("replica.location:" + NODE_A + ",replica.location:" + NODE_B));
+        replicaRouterBean.record(NODE_A, millis(110), true);
+        replicaRouterBean.record(NODE_A, millis(110), true);
+        assertThat("unchanged until updated", replicaRouterBean.getShardsPreference(),
+                is("replica.location:" + NODE_A + ",replica.location:" + NODE_B));
+        replicaRouterBean.updateShardsPreference();
+        assertThat("B first", replicaRouterBean.getShardsPreference(),
+                is("replica.location:" + NODE_B + ",replica.location:" + NODE_A));
+    }
+
+    @Test
+    void rank() {
+        final ReplicaRouterBean replicaRouterBean = newReplicaRouterBean(true);
+        replicaRouterBean.record(NODE_A, millis(30), true);
+        replicaRouterBean.record(NODE_B, millis(10), true);
+        replicaRouterBean.record(NODE_C, millis(5), false);
+        final String coreA = NODE_A + "/collection_shard1_replica_n1/";
+        final String coreB = NODE_B + "/collection_shard1_replica_n2/";
+        final String coreC = NODE_C + "/collection_shard1_replica_n3/";
+        final String coreD = "http://d:8983/solr/collection_shard1_replica_n4/";
+        assertThat(replicaRouterBean.rank(List.of(coreC, coreD, coreA, coreB)),
+                is(List.of(coreB, coreA, coreD, coreC)));
+    }
+
+    @Test
+    void disabled() {
+        final ReplicaRouterBean replicaRouterBean = newReplicaRouterBean(false);
+        replicaRouterBean.record(NODE_A, millis(10), true);
+        replicaRouterBean.updateShardsPreference();
+        final SolrQuery query = replicaRouterBean.preferFastReplicas(new SolrQuery());
+        assertThat(query.get(ShardParams.SHARDS_PREFERENCE), is(nullValue()));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static ReplicaRouterBean newReplicaRouterBean(boolean enabled) {
+        final ReplicaRouterBean replicaRouterBean = new ReplicaRouterBean();
+        replicaRouterBean.enabled = enabled;
+        replicaRouterBean.decay = 0.5;
+        replicaRouterBean.errorThreshold = 0.5;
+        return replicaRouterBean;
+    }
+}
@@ -0,0 +1,56 @@
+package dk.dbc.triton.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScanCursorTest {
+    @Test
+    void roundTrip() {
+        final ScanCursor cursor = new ScanCursor("collection", "scan.mti",
+                new ScanCursor.Bound("hans christian andersen", false),
+                List.of(new ScanCursor.Bound("hans", true), new ScanCursor.Bound("hans c", false)));
+        assertThat(ScanCursor.decode(cursor.encode()), is(cursor));
+    }
+
+    @Test
+    void tokenIsUrlSafe() {
+        final String token = new ScanCursor("collection", "scan.mti",
+                new ScanCursor.Bound("\u00e6\u00f8\u00e5?/+", true), List.of()).encode();
+        assertThat(token.matches("[A-Za-z0-9_-]+"), is(true));
+    }
+
+    @Test
+    void malformedToken() {
+        assertThrows(IllegalArgumentException.class, () -> ScanCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> ScanCursor.decode("Zm9v"));
+    }
+
+    @Test
+    void pagingForwardAndBack() {
+        final ScanCursor first = new ScanCursor("collection", "scan.mti",
+                new ScanCursor.Bound("a", true), List.of());
+        assertThat("no page before the first", first.previous(), is(Optional.empty()));
+
+        final ScanCursor second = first.next("c");
+        assertThat("second bound", second.bound(), is(new ScanCursor.Bound("c", false)));
+        final ScanCursor third = second.next("f");
+        assertThat("back to second", third.previous(), is(Optional.of(second)));
+        assertThat("back to first", third.previous().flatMap(ScanCursor::previous), is(Optional.of(first)));
+    }
+
+    @Test
+    void historyIsBounded() {
+        ScanCursor cursor = new ScanCursor("collection", "scan.mti", new ScanCursor.Bound("a", true), List.of());
+        for (int i = 0; i < ScanCursor.MAX_HISTORY + 5; i++) {
+            cursor = cursor.next("t" + i);
+        }
+        assertThat("history", cursor.history().size(), is(ScanCursor.MAX_HISTORY));
+        assertThat("round trip", ScanCursor.decode(cursor.encode()), is(cursor));
+    }
+}
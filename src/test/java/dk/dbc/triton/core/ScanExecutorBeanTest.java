@@ -0,0 +1,106 @@
+package dk.dbc.triton.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ScanExecutorBeanTest {
+    private final ScanExecutorBean scanExecutorBean = newScanExecutorBean();
+
+    @AfterEach
+    void shutdown() {
+        scanExecutorBean.shutdown();
+    }
+
+    @Test
+    void submitAllReturnsResultsInTaskOrder() throws ExecutionException, InterruptedException {
+        final List<Supplier<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int result = i;
+            tasks.add(() -> result);
+        }
+        final List<CompletableFuture<Integer>> futures = scanExecutorBean.submitAll(tasks);
+        for (int i = 0; i < 10; i++) {
+            assertThat("result " + i, futures.get(i).get(), is(i));
+        }
+    }
+
+    @Test
+    void submitAllLimitsRequestConcurrency() throws ExecutionException, InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Supplier<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return running.decrementAndGet();
+            });
+        }
+        for (CompletableFuture<Integer> future : scanExecutorBean.submitAll(tasks)) {
+            future.get();
+        }
+        assertThat(maxRunning.get() <= scanExecutorBean.requestConcurrency, is(true));
+    }
+
+    @Test
+    void failedTaskFailsOnlyItsFuture() throws ExecutionException, InterruptedException {
+        final List<Supplier<Integer>> tasks = List.of(
+                () -> {
+                    throw new TritonException("failed");
+                },
+                () -> 1);
+        final List<CompletableFuture<Integer>> futures = scanExecutorBean.submitAll(tasks);
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> futures.get(0).get());
+        assertThat("cause", e.getCause(), instanceOf(TritonException.class));
+        assertThat("second task", futures.get(1).get(), is(1));
+    }
+
+    @Test
+    void saturatedExecutorFailsTasks() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Supplier<Integer> blockingTask = () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        };
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < scanExecutorBean.threads + scanExecutorBean.queueSize + 1; i++) {
+            futures.add(scanExecutorBean.submit(blockingTask));
+        }
+        final CompletableFuture<Integer> rejected = futures.get(futures.size() - 1);
+        final ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertThat("cause", e.getCause(), instanceOf(TritonException.class));
+        release.countDown();
+    }
+
+    public static ScanExecutorBean newScanExecutorBean() {
+        final ScanExecutorBean scanExecutorBean = new ScanExecutorBean();
+        scanExecutorBean.threads = 4;
+        scanExecutorBean.queueSize = 10;
+        scanExecutorBean.requestConcurrency = 2;
+        scanExecutorBean.executor = scanExecutorBean.createExecutor(Executors.defaultThreadFactory());
+        return scanExecutorBean;
+    }
+}
@@ -1,14 +1,53 @@
 package dk.dbc.triton.core;
 
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.common.cloud.Aliases;
+import org.apache.solr.common.cloud.CloudCollectionsListener;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.SolrZkClient;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
-import java.util.Properties;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ScanMapBeanTest {
+    private static final String SCAN_MAP_PATH = "/configs/config/scanMap.txt";
+
     private final ScanMapBean scanMapBean = newScanMapBean();
+    private final SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+    private final CloudSolrClient cloudSolrClient = mock(CloudSolrClient.class);
+    private final ZkStateReader zkStateReader = mock(ZkStateReader.class);
+    private final SolrZkClient zkClient = mock(SolrZkClient.class);
+    private final List<Runnable> tasks = new ArrayList<>();
+    private boolean runningTasks = false;
 
     @Test
     void unknownCollection() {
@@ -28,10 +67,191 @@ public class ScanMapBeanTest {
                 is("scan.mti"));
     }
 
+    @Test
+    void configuredEngine() {
+        scanMapBean.snapshot.set(Map.of("collection", Map.of(
+                "engine.scan.mti", "facet",
+                "engine.scan.lti", "unknown")));
+        assertThat("configured", scanMapBean.engineOf("collection", "scan.mti"), is(Optional.of(ScanEngine.FACET)));
+        assertThat("unknown engine", scanMapBean.engineOf("collection", "scan.lti"), is(Optional.empty()));
+        assertThat("not configured", scanMapBean.engineOf("collection", "scan.ti"), is(Optional.empty()));
+        assertThat("unknown collection", scanMapBean.engineOf("unknown", "scan.mti"), is(Optional.empty()));
+    }
+
+    @Test
+    void loadsOnFirstUse() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenReturn(scanMapData("mti=scan.mti"));
+
+        assertThat("first use", lazyScanMapBean.resolve("collection", "mti"), is("scan.mti"));
+        assertThat("second use", lazyScanMapBean.resolve("collection", "mti"), is("scan.mti"));
+        verify(zkClient, times(1)).getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true));
+    }
+
+    @Test
+    void engineOfLoadsOnFirstUse() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenReturn(scanMapData("engine.scan.mti=facet"));
+
+        assertThat(lazyScanMapBean.engineOf("collection", "scan.mti"), is(Optional.of(ScanEngine.FACET)));
+    }
+
+    @Test
+    void concurrentFirstUsesShareLoad() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenAnswer(invocation -> {
+                    loading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return scanMapData("mti=scan.mti");
+                });
+
+        final CompletableFuture<String> first = CompletableFuture.supplyAsync(
+                () -> lazyScanMapBean.resolve("collection", "mti"));
+        assertThat("load started", loading.await(5, TimeUnit.SECONDS), is(true));
+        final CompletableFuture<String> second = CompletableFuture.supplyAsync(
+                () -> lazyScanMapBean.resolve("collection", "mti"));
+        Thread.sleep(100);
+        assertThat("second use waits for load", second.isDone(), is(false));
+
+        release.countDown();
+        assertThat("first use", first.get(5, TimeUnit.SECONDS), is("scan.mti"));
+        assertThat("second use", second.get(5, TimeUnit.SECONDS), is("scan.mti"));
+        verify(zkClient, times(1)).getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true));
+    }
+
+    @Test
+    void failedLoadIsRetried() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenThrow(new KeeperException.ConnectionLossException())
+                .thenReturn(scanMapData("mti=scan.mti"));
+
+        assertThat("failed load", lazyScanMapBean.resolve("collection", "mti"), is("mti"));
+        assertThat("retried load", lazyScanMapBean.resolve("collection", "mti"), is("scan.mti"));
+    }
+
+    @Test
+    void readsIso88591() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenReturn(scanMapData("titel=scan.tit\u00e6l\nforfatter=scan.forfatter\\u00f8"));
+
+        assertThat("iso-8859-1", lazyScanMapBean.resolve("collection", "titel"), is("scan.tit\u00e6l"));
+        assertThat("unicode escape", lazyScanMapBean.resolve("collection", "forfatter"), is("scan.forfatter\u00f8"));
+    }
+
+    @Test
+    void reloadsOnChange() throws Exception {
+        final ScanMapBean lazyScanMapBean = newLazyScanMapBean();
+        final ArgumentCaptor<Watcher> watcherCaptor = ArgumentCaptor.forClass(Watcher.class);
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenReturn(scanMapData("mti=scan.mti"))
+                .thenReturn(scanMapData("mti=scan.mti2"));
+        assertThat("before change", lazyScanMapBean.resolve("collection", "mti"), is("scan.mti"));
+
+        verify(zkClient).getData(eq(SCAN_MAP_PATH), watcherCaptor.capture(), isNull(), eq(true));
+        watcherCaptor.getValue().process(new WatchedEvent(Watcher.Event.EventType.NodeDataChanged,
+                Watcher.Event.KeeperState.SyncConnected, SCAN_MAP_PATH));
+        assertThat("after change", lazyScanMapBean.resolve("collection", "mti"), is("scan.mti2"));
+    }
+
+    @Test
+    void initializeLoadsInBackground() throws Exception {
+        final ScanMapBean eagerScanMapBean = newEagerScanMapBean();
+        when(zkClient.getData(eq(SCAN_MAP_PATH), any(Watcher.class), isNull(), eq(true)))
+                .thenReturn(scanMapData("mti=scan.mti"));
+
+        eagerScanMapBean.initialize();
+        assertThat("loading scheduled", tasks.size(), is(1));
+        verify(zkClient, never()).getData(anyString(), any(Watcher.class), any(), anyBoolean());
+        verify(zkStateReader, never()).registerCloudCollectionsListener(any());
+
+        runTasks();
+        assertThat("loaded", eagerScanMapBean.loaded, is(true));
+        assertThat("resolved", eagerScanMapBean.resolve("collection", "mti"), is("scan.mti"));
+        verify(zkStateReader).registerCloudCollectionsListener(any(CloudCollectionsListener.class));
+    }
+
+    @Test
+    void addedCollectionsLoadInBackground() throws Exception {
+        final ScanMapBean eagerScanMapBean = newEagerScanMapBean();
+        eagerScanMapBean.initialize();
+        runTasks();
+        final ArgumentCaptor<CloudCollectionsListener> listenerCaptor =
+                ArgumentCaptor.forClass(CloudCollectionsListener.class);
+        verify(zkStateReader).registerCloudCollectionsListener(listenerCaptor.capture());
+        when(zkStateReader.readConfigName("collection2")).thenReturn("config2");
+
+        listenerCaptor.getValue().onChange(Set.of("collection"), Set.of("collection", "collection2"));
+        assertThat("loading scheduled", tasks.size(), is(1));
+        verify(zkStateReader, never()).readConfigName("collection2");
+
+        runTasks();
+        verify(zkStateReader).readConfigName("collection2");
+    }
+
+    /* Runs the queued tasks, and any tasks they submit at once */
+    private void runTasks() {
+        runningTasks = true;
+        try {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        } finally {
+            runningTasks = false;
+        }
+    }
+
+    private ScanMapBean newEagerScanMapBean() throws Exception {
+        final ManagedExecutorService executorService = mock(ManagedExecutorService.class);
+        doAnswer(invocation -> {
+            final Runnable task = invocation.getArgument(0);
+            if (runningTasks) {
+                task.run();
+            } else {
+                tasks.add(task);
+            }
+            return null;
+        }).when(executorService).execute(any(Runnable.class));
+        final ScanMapBean eagerScanMapBean = newLazyScanMapBean();
+        eagerScanMapBean.eagerLoading = true;
+        eagerScanMapBean.executorService = executorService;
+        return eagerScanMapBean;
+    }
+
+    private ScanMapBean newLazyScanMapBean() throws Exception {
+        final ClusterState clusterState = mock(ClusterState.class);
+        when(clusterState.getCollectionsMap()).thenReturn(Map.of("collection", mock(DocCollection.class)));
+        final Aliases aliases = mock(Aliases.class);
+        when(aliases.getCollectionAliasMap()).thenReturn(Map.of());
+        when(zkStateReader.getClusterState()).thenReturn(clusterState);
+        when(zkStateReader.getAliases()).thenReturn(aliases);
+        when(zkStateReader.getZkClient()).thenReturn(zkClient);
+        when(zkStateReader.readConfigName("collection")).thenReturn("config");
+        when(cloudSolrClient.getZkStateReader()).thenReturn(zkStateReader);
+        when(solrClientFactoryBean.getCloudSolrClient()).thenReturn(cloudSolrClient);
+        when(solrClientFactoryBean.resolveCollectionAlias(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        final ScanMapBean lazyScanMapBean = new ScanMapBean();
+        lazyScanMapBean.solrClientFactoryBean = solrClientFactoryBean;
+        lazyScanMapBean.eagerLoading = false;
+        lazyScanMapBean.fetchTimeoutMs = 5000;
+        return lazyScanMapBean;
+    }
+
+    private static byte[] scanMapData(String content) {
+        return content.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
     public static ScanMapBean newScanMapBean() {
         final ScanMapBean scanMapBean = new ScanMapBean();
-        scanMapBean.collectionProperties.put("collection", new Properties());
-        scanMapBean.collectionProperties.get("collection").put("mti", "scan.mti");
+        scanMapBean.snapshot.set(Map.of("collection", Map.of("mti", "scan.mti")));
+        scanMapBean.loaded = true;
         return scanMapBean;
     }
 }
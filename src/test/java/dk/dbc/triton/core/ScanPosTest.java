@@ -20,7 +20,7 @@ class ScanPosTest {
 
     @Test
     void fromStringThrowsOnUnknown() {
-        assertThrows(IllegalArgumentException.class, () -> ScanPos.fromString("middle"));
+        assertThrows(IllegalArgumentException.class, () -> ScanPos.fromString("center"));
     }
 
     @Test
@@ -1,8 +1,11 @@
 package dk.dbc.triton.core;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import dk.dbc.triton.rest.CborMapperProvider;
 import dk.dbc.triton.rest.JsonMapperProvider;
+import dk.dbc.triton.rest.SmileMapperProvider;
 import dk.dbc.triton.rest.XmlMapperProvider;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.common.util.NamedList;
@@ -14,10 +17,10 @@ import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class ScanResultTest {
     public static TermsResponse createTermsResponse(String... indexes) {
@@ -33,19 +36,51 @@ public class ScanResultTest {
     }
 
     @Test
-    void throwsOnNullTermsResponse() {
-        assertThrows(NullPointerException.class, () -> ScanResult.of(null));
+    void nullTermsResponse() {
+        assertThat(ScanResult.of(null, "author"), is(new ScanResult("author", List.of())));
     }
 
     @Test
-    void throwsOnMultipleIndexesInTermResponse() {
+    void emptyTermsResponse() {
+        assertThat(ScanResult.of(new TermsResponse(new NamedList<>()), "author"),
+                is(new ScanResult("author", List.of())));
+    }
+
+    @Test
+    void indexOfMultiIndexTermsResponse() {
         final TermsResponse termsResponse = createTermsResponse("author", "title");
-        assertThrows(IllegalArgumentException.class, () -> ScanResult.of(termsResponse));
+        assertThat("title", ScanResult.of(termsResponse, "title"),
+                is(new ScanResult("title", List.of(
+                        new ScanResult.Term("a", 1),
+                        new ScanResult.Term("b", 2),
+                        new ScanResult.Term("c", 3)))));
+        assertThat("unknown", ScanResult.of(termsResponse, "subject"),
+                is(new ScanResult("subject", List.of())));
     }
 
     @Test
-    void emptyTermsResponse() {
-        assertThat(ScanResult.of(new TermsResponse(new NamedList<>())), is(ScanResult.EMPTY));
+    void merge() {
+        final ScanResult.Term approximateTerm = new ScanResult.Term("c", 1);
+        approximateTerm.setExact(false);
+        final List<ScanResult> scanResults = List.of(
+                new ScanResult("author", List.of(
+                        new ScanResult.Term("a", 1),
+                        new ScanResult.Term("c", 2))),
+                new ScanResult("title", List.of(
+                        new ScanResult.Term("b", 3),
+                        approximateTerm)));
+
+        final ScanResult.Term mergedTerm = new ScanResult.Term("c", 3);
+        mergedTerm.setExact(false);
+        assertThat(ScanResult.merge(scanResults, 2),
+                is(new ScanResult("author,title", List.of(
+                        new ScanResult.Term("a", 1),
+                        new ScanResult.Term("b", 3)))));
+        assertThat("frequencies summed", ScanResult.merge(scanResults, 3),
+                is(new ScanResult("author,title", List.of(
+                        new ScanResult.Term("a", 1),
+                        new ScanResult.Term("b", 3),
+                        mergedTerm))));
     }
 
     @Test
@@ -54,7 +89,8 @@ public class ScanResultTest {
         final XmlMapper xmlMapper = xmlMapperProvider.getContext(ScanResultTest.class);
         final StringWriter stringWriter = new StringWriter();
         final TermsResponse termsResponse = createTermsResponse("author");
-        xmlMapper.writeValue(stringWriter, ScanResult.of(termsResponse));
+        xmlMapper.writer().with(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(stringWriter, ScanResult.of(termsResponse, "author"));
 
         final String expected = new String(
                 readResource("src/test/resources/scanresult.xml"),
@@ -68,7 +104,8 @@ public class ScanResultTest {
         final ObjectMapper objectMapper = jsonMapperProvider.getContext(ScanResultTest.class);
         final StringWriter stringWriter = new StringWriter();
         final TermsResponse termsResponse = createTermsResponse("author");
-        objectMapper.writeValue(stringWriter, ScanResult.of(termsResponse));
+        objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(stringWriter, ScanResult.of(termsResponse, "author"));
 
         final String expected = new String(
                 readResource("src/test/resources/scanresult.json"),
@@ -76,6 +113,56 @@ public class ScanResultTest {
         assertThat(stringWriter.toString(), is(expected));
     }
 
+    @Test
+    void jsonOutputWithApproximateTerm() throws IOException {
+        final ObjectMapper objectMapper = new JsonMapperProvider().getContext(ScanResultTest.class);
+        final ScanResult scanResult = ScanResult.of(createTermsResponse("author"), "author");
+        scanResult.getTerms().get(0).setExact(false);
+
+        final String json = objectMapper.writeValueAsString(scanResult);
+        assertThat(objectMapper.readTree(json).get("terms").get(0).get("exact").asBoolean(true), is(false));
+        assertThat(objectMapper.readTree(json).get("terms").get(1).has("exact"), is(false));
+    }
+
+    @Test
+    void jsonOutputIsCompactByDefault() throws IOException {
+        final ObjectMapper objectMapper = new JsonMapperProvider().getContext(ScanResultTest.class);
+        final ScanResult scanResult = ScanResult.of(createTermsResponse("author"), "author");
+        scanResult.setNext("next");
+
+        assertThat(objectMapper.writeValueAsString(scanResult), is("{\"index\":\"author\",\"terms\":[" +
+                "{\"value\":\"a\",\"frequency\":1},{\"value\":\"b\",\"frequency\":2}," +
+                "{\"value\":\"c\",\"frequency\":3}],\"next\":\"next\"}"));
+    }
+
+    @Test
+    void jsonOutputOfTruncatedResult() throws IOException {
+        final ObjectMapper objectMapper = new JsonMapperProvider().getContext(ScanResultTest.class);
+        final ScanResult scanResult = new ScanResult("author", List.of(new ScanResult.Term("a", 1)));
+        scanResult.setTruncated(true);
+
+        assertThat(objectMapper.writeValueAsString(scanResult), is("{\"index\":\"author\",\"terms\":[" +
+                "{\"value\":\"a\",\"frequency\":1}],\"truncated\":true}"));
+    }
+
+    @Test
+    void jsonOutputOfEmptyResult() throws IOException {
+        final ObjectMapper objectMapper = new JsonMapperProvider().getContext(ScanResultTest.class);
+        assertThat(objectMapper.writeValueAsString(ScanResult.EMPTY), is("{}"));
+    }
+
+    @Test
+    void binaryOutput() throws IOException {
+        final ObjectMapper jsonMapper = new JsonMapperProvider().getContext(ScanResultTest.class);
+        final ScanResult scanResult = ScanResult.of(createTermsResponse("author"), "author");
+        for (ObjectMapper objectMapper : List.of(
+                new CborMapperProvider().getContext(ScanResultTest.class),
+                new SmileMapperProvider().getContext(ScanResultTest.class))) {
+            final byte[] bytes = objectMapper.writeValueAsBytes(scanResult);
+            assertThat(objectMapper.readTree(bytes), is(jsonMapper.readTree(jsonMapper.writeValueAsString(scanResult))));
+        }
+    }
+
     private byte[] readResource(String resource) {
         try {
             return Files.readAllBytes(Paths.get(resource));
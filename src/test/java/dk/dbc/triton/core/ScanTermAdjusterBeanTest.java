@@ -1,24 +1,27 @@
 package dk.dbc.triton.core;
 
 import dk.dbc.solr.SolrFieldAnalysis;
-import dk.dbc.solr.SolrSearch;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
-import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.util.NamedList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,43 +33,33 @@ class ScanTermAdjusterBeanTest {
 
     private SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
     private CloudSolrClient cloudSolrClient = mock(CloudSolrClient.class);
-    private SolrSearch solrSearch = mock(SolrSearch.class);
     private SolrFieldAnalysis solrFieldAnalysis = mock(SolrFieldAnalysis.class);
-
-    private final QueryResponse queryResponse = createQueryResponse();
+    private NormalizationCacheBean normalizationCacheBean = mock(NormalizationCacheBean.class);
 
     @BeforeEach
     void setupExpectations() {
         when(solrClientFactoryBean.getCloudSolrClient()).thenReturn(cloudSolrClient);
-        when(solrSearch.withQuery(anyString())).thenReturn(solrSearch);
-        try {
-            when(solrSearch.execute()).thenReturn(queryResponse);
-        } catch (IOException | SolrServerException e) {
-            throw new IllegalStateException(e);
-        }
-    }
-
-    @Test
-    void updatesTerm() throws ExecutionException, InterruptedException {
-        final ScanTermAdjusterBean scanTermAdjusterBean = spy(createScanTermAdjusterBean());
-        doReturn(solrSearch).when(scanTermAdjusterBean).createSolrSearch(cloudSolrClient, COLLECTION);
-
-        final ScanResult.Term term = new ScanResult.Term("value", 1000);
-        final Future<ScanResult.Term> termFuture =
-                scanTermAdjusterBean.adjustTermFrequency(COLLECTION, INDEX, term);
-        assertThat("future", termFuture.get(), is(term));
-        assertThat("frequency", term.getFrequency(), is(queryResponse.getResults().getNumFound()));
+        when(solrClientFactoryBean.getFrequencyClient()).thenReturn(cloudSolrClient);
     }
 
     @Test
-    void exactMatchSearch() {
-        final ScanTermAdjusterBean scanTermAdjusterBean = spy(createScanTermAdjusterBean());
-        doReturn(solrSearch).when(scanTermAdjusterBean).createSolrSearch(cloudSolrClient, COLLECTION);
-
-        final ScanResult.Term term = new ScanResult.Term("{value}", 1000);
-        scanTermAdjusterBean.adjustTermFrequency(COLLECTION, INDEX, term);
-
-        verify(solrSearch).withQuery("index:\"\\{value\\}\"");
+    void getTermFrequencies() throws IOException, SolrServerException {
+        final NamedList<Object> facetQueries = new NamedList<>();
+        facetQueries.add("index:\"a\"", 1);
+        facetQueries.add("index:\"\\{b\\}\"", 2);
+        final NamedList<Object> facetCounts = new NamedList<>();
+        facetCounts.add("facet_queries", facetQueries);
+        final NamedList<Object> response = new NamedList<>();
+        response.add("facet_counts", facetCounts);
+        final QueryResponse facetResponse = new QueryResponse();
+        facetResponse.setResponse(response);
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class), eq(SolrRequest.METHOD.POST)))
+                .thenReturn(facetResponse);
+
+        final ScanTermAdjusterBean scanTermAdjusterBean = createScanTermAdjusterBean();
+        assertThat(scanTermAdjusterBean.getTermFrequencies(COLLECTION, INDEX, List.of("a", "{b}"),
+                Deadline.after(10000)),
+                is(Map.of("a", 1L, "{b}", 2L)));
     }
 
     @Test
@@ -91,19 +84,50 @@ class ScanTermAdjusterBeanTest {
                 is("test phrase hashtag something #245a (bog)"));
     }
 
+    @Test
+    void normalizeByFieldTypeCached() throws SolrServerException {
+        final NormalizationCacheBean.Key key = new NormalizationCacheBean.Key(
+                COLLECTION, "config:42", FIELD_TYPE, "Test Phrase");
+        when(normalizationCacheBean.keyOf(COLLECTION, FIELD_TYPE, "Test Phrase")).thenReturn(Optional.of(key));
+        final ScanTermAdjusterBean scanTermAdjusterBean = spy(createScanTermAdjusterBean());
+        doReturn(solrFieldAnalysis).when(scanTermAdjusterBean).createSolrFieldAnalysis(cloudSolrClient, COLLECTION);
+        when(solrFieldAnalysis.byFieldType(FIELD_TYPE, "Test Phrase"))
+                .thenReturn("test phrase");
+
+        assertThat("cache miss", scanTermAdjusterBean.normalizeByFieldType(
+                COLLECTION, FIELD_TYPE, "Test Phrase"), is("test phrase"));
+        verify(normalizationCacheBean).put(key, "test phrase");
+        verify(normalizationCacheBean).get(key);
+
+        when(normalizationCacheBean.get(key)).thenReturn(Optional.of("cached phrase"));
+        assertThat("cache hit", scanTermAdjusterBean.normalizeByFieldType(
+                COLLECTION, FIELD_TYPE, "Test Phrase"), is("cached phrase"));
+        verify(solrFieldAnalysis).byFieldType(FIELD_TYPE, "Test Phrase");
+    }
+
+    @Test
+    void analyzeByFieldTypeSkipsCacheLookup() throws SolrServerException {
+        final NormalizationCacheBean.Key key = new NormalizationCacheBean.Key(
+                COLLECTION, "config:42", FIELD_TYPE, "Test Phrase");
+        when(normalizationCacheBean.keyOf(COLLECTION, FIELD_TYPE, "Test Phrase")).thenReturn(Optional.of(key));
+        final ScanTermAdjusterBean scanTermAdjusterBean = spy(createScanTermAdjusterBean());
+        doReturn(solrFieldAnalysis).when(scanTermAdjusterBean).createSolrFieldAnalysis(cloudSolrClient, COLLECTION);
+        when(solrFieldAnalysis.byFieldType(FIELD_TYPE, "Test Phrase"))
+                .thenReturn("test phrase");
+
+        assertThat(scanTermAdjusterBean.analyzeByFieldType(
+                COLLECTION, FIELD_TYPE, "Test Phrase"), is("test phrase"));
+        verify(normalizationCacheBean).put(key, "test phrase");
+        verify(normalizationCacheBean, never()).get(any(NormalizationCacheBean.Key.class));
+    }
+
     private ScanTermAdjusterBean createScanTermAdjusterBean() {
         final ScanTermAdjusterBean scanTermAdjusterBean = new ScanTermAdjusterBean();
         scanTermAdjusterBean.solrClientFactoryBean = solrClientFactoryBean;
+        scanTermAdjusterBean.hedgedRequestBean = HedgedRequestBeanTest.newDisabledHedgedRequestBean();
+        scanTermAdjusterBean.replicaRouterBean = new ReplicaRouterBean();
+        scanTermAdjusterBean.normalizationCacheBean = normalizationCacheBean;
+        scanTermAdjusterBean.termFrequencyCacheBean = TermFrequencyCacheBeanTest.newTermFrequencyCacheBean(0);
         return scanTermAdjusterBean;
     }
-
-    private QueryResponse createQueryResponse() {
-        final SolrDocumentList searchResult = new SolrDocumentList();
-        searchResult.setNumFound(42);
-        final NamedList<Object> response = new NamedList<>();
-        response.add("response", searchResult);
-        final QueryResponse queryResponse = new QueryResponse();
-        queryResponse.setResponse(response);
-        return queryResponse;
-    }
 }
@@ -0,0 +1,169 @@
+package dk.dbc.triton.core;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardScanBeanTest {
+    private static final String COLLECTION = "collection";
+    private static final String INDEX = "scan.mti";
+    private static final String SHARD1 = "http://a:8983/solr/collection_shard1_replica_n1/";
+    private static final String SHARD2 = "http://b:8983/solr/collection_shard2_replica_n2/";
+
+    private final SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+    private final SolrClient shard1Client = mock(SolrClient.class);
+    private final SolrClient shard2Client = mock(SolrClient.class);
+    private final ScanExecutorBean scanExecutorBean = ScanExecutorBeanTest.newScanExecutorBean();
+
+    @AfterEach
+    void shutdown() {
+        scanExecutorBean.shutdown();
+    }
+
+    @Test
+    void mergeFirst() {
+        assertThat(ShardScanBean.merge(List.of(
+                        terms("a", 1, "c", 3, "e", 5),
+                        terms("b", 2, "c", 3, "d", 4)), 4),
+                is(terms("a", 1, "b", 2, "c", 6, "d", 4)));
+    }
+
+    @Test
+    void mergeSumsTermAtSizeBoundary() {
+        assertThat(ShardScanBean.merge(List.of(
+                        terms("a", 1, "b", 2),
+                        terms("b", 3),
+                        List.of()), 2),
+                is(terms("a", 1, "b", 5)));
+    }
+
+    @Test
+    void scan() throws IOException, SolrServerException {
+        shardResponds(shard1Client, "a", 1, "c", 3);
+        shardResponds(shard2Client, "b", 2, "c", 3);
+        final ShardScanBean shardScanBean = newShardScanBean();
+
+        final ScanResult scanResult = shardScanBean.scan(COLLECTION, INDEX, "a", true, 10, "",
+                false, Deadline.after(10000)).join();
+        assertThat(scanResult.getIndex(), is(INDEX));
+        assertThat(scanResult.getTerms(), is(terms("a", 1, "b", 2, "c", 6)));
+    }
+
+    @Test
+    void scanFailsOnFailingShard() throws IOException, SolrServerException {
+        shardResponds(shard1Client, "a", 1, "c", 3);
+        when(shard2Client.query(any(SolrParams.class))).thenThrow(new SolrServerException("shard down"));
+        final ShardScanBean shardScanBean = newShardScanBean();
+
+        assertThrows(CompletionException.class, () -> shardScanBean.scan(
+                COLLECTION, INDEX, "a", true, 10, "", false, Deadline.after(10000)).join());
+    }
+
+    @Test
+    void scanFailureCancelsPendingShards() throws IOException, SolrServerException {
+        final AtomicInteger requests = new AtomicInteger();
+        when(shard1Client.query(any(SolrParams.class))).thenAnswer(invocation -> {
+            requests.incrementAndGet();
+            Thread.sleep(100);
+            throw new SolrServerException("shard down");
+        });
+        when(shard2Client.query(any(SolrParams.class))).thenAnswer(invocation -> {
+            requests.incrementAndGet();
+            Thread.sleep(100);
+            throw new SolrServerException("shard down");
+        });
+        scanExecutorBean.requestConcurrency = 1;
+        final ShardScanBean shardScanBean = newShardScanBean();
+
+        assertThrows(CompletionException.class, () -> shardScanBean.scan(
+                COLLECTION, INDEX, "a", true, 10, "", false, Deadline.after(10000)).join());
+        assertThat("requests", requests.get(), is(1));
+    }
+
+    @Test
+    void scanToleratesFailingShard() throws IOException, SolrServerException {
+        shardResponds(shard1Client, "a", 1, "c", 3);
+        when(shard2Client.query(any(SolrParams.class))).thenThrow(new SolrServerException("shard down"));
+        final ShardScanBean shardScanBean = newShardScanBean();
+
+        final ScanResult scanResult = shardScanBean.scan(
+                COLLECTION, INDEX, "a", true, 10, "", true, Deadline.after(10000)).join();
+        assertThat("terms", scanResult.getTerms(), is(terms("a", 1, "c", 3)));
+        assertThat("missing shards", scanResult.getMissingShards(), is(List.of("shard2")));
+    }
+
+    @Test
+    void scanShardTimeoutIsBoundedByDeadline() throws IOException, SolrServerException {
+        shardResponds(shard1Client, "a", 1, "c", 3);
+        when(shard2Client.query(any(SolrParams.class))).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return null;
+        });
+        final ShardScanBean shardScanBean = newShardScanBean();
+
+        final ScanResult scanResult = shardScanBean.scan(
+                COLLECTION, INDEX, "a", true, 10, "", true, Deadline.after(200)).join();
+        assertThat("terms", scanResult.getTerms(), is(terms("a", 1, "c", 3)));
+        assertThat("missing shards", scanResult.getMissingShards(), is(List.of("shard2")));
+    }
+
+    private void shardResponds(SolrClient shardClient, Object... valuesAndFrequencies)
+            throws IOException, SolrServerException {
+        final NamedList<Object> indexTerms = new NamedList<>();
+        for (int i = 0; i < valuesAndFrequencies.length; i += 2) {
+            indexTerms.add((String) valuesAndFrequencies[i], valuesAndFrequencies[i + 1]);
+        }
+        final NamedList<NamedList<Object>> list = new NamedList<>();
+        list.add(INDEX, indexTerms);
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getTermsResponse()).thenReturn(new TermsResponse(list));
+        when(shardClient.query(any(SolrParams.class))).thenReturn(queryResponse);
+    }
+
+    private static List<ScanResult.Term> terms(Object... valuesAndFrequencies) {
+        final List<ScanResult.Term> terms = new ArrayList<>();
+        for (int i = 0; i < valuesAndFrequencies.length; i += 2) {
+            terms.add(new ScanResult.Term((String) valuesAndFrequencies[i],
+                    ((Integer) valuesAndFrequencies[i + 1]).longValue()));
+        }
+        return terms;
+    }
+
+    public static ShardScanBean newShardScanBean(SolrClientFactoryBean solrClientFactoryBean,
+                                                 ScanExecutorBean scanExecutorBean) {
+        final ShardScanBean shardScanBean = new ShardScanBean();
+        shardScanBean.solrClientFactoryBean = solrClientFactoryBean;
+        shardScanBean.scanExecutorBean = scanExecutorBean;
+        shardScanBean.replicaRouterBean = new ReplicaRouterBean();
+        shardScanBean.shardTimeoutMs = 5000;
+        return shardScanBean;
+    }
+
+    private ShardScanBean newShardScanBean() {
+        when(solrClientFactoryBean.getLiveShardCoreUrls(COLLECTION)).thenReturn(Map.of(
+                "shard1", List.of(SHARD1),
+                "shard2", List.of(SHARD2)));
+        when(solrClientFactoryBean.getReplicaClient(SHARD1)).thenReturn(shard1Client);
+        when(solrClientFactoryBean.getReplicaClient(SHARD2)).thenReturn(shard2Client);
+        return newShardScanBean(solrClientFactoryBean, scanExecutorBean);
+    }
+}
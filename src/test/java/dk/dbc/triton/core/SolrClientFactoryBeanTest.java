@@ -0,0 +1,135 @@
+package dk.dbc.triton.core;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.CloudHttp2SolrClient;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SolrClientFactoryBeanTest {
+    private static final String COLLECTION = "collection";
+    private static final String CORE_URL = "http://a:8983/solr/collection_shard1_replica_n1/";
+
+    private final CloudSolrClient cloudSolrClient = mock(CloudSolrClient.class);
+    private final CloudHttp2SolrClient cloudHttp2SolrClient = mock(CloudHttp2SolrClient.class);
+    private final MetricRegistry metricRegistry = mock(MetricRegistry.class);
+    private final Timer leaseWaitTimer = mock(Timer.class);
+    private SolrClientFactoryBean solrClientFactoryBean;
+
+    @AfterEach
+    void shutdown() {
+        if (solrClientFactoryBean != null) {
+            solrClientFactoryBean.shutdown();
+        }
+    }
+
+    @Test
+    void frequencyLookupsOverHttp2() throws Exception {
+        solrClientFactoryBean = newSolrClientFactoryBean(true);
+        assertThat("frequency client", solrClientFactoryBean.getFrequencyClient(), is(cloudHttp2SolrClient));
+
+        assertThat("lookup", frequencyLookupClient(Deadline.after(60000)), instanceOf(Http2SolrClient.class));
+        assertThat("lookup reuses client", frequencyLookupClient(Deadline.after(100)),
+                is(frequencyLookupClient(Deadline.after(60000))));
+        assertThat("replica request", solrClientFactoryBean.getReplicaClient(CORE_URL, cloudSolrClient),
+                instanceOf(HttpSolrClient.class));
+    }
+
+    @Test
+    void frequencyLookupsOverHttp1ByDefault() throws Exception {
+        solrClientFactoryBean = newSolrClientFactoryBean(false);
+        assertThat("frequency client", solrClientFactoryBean.getFrequencyClient(), is(cloudSolrClient));
+
+        assertThat("lookup", frequencyLookupClient(Deadline.after(60000)), instanceOf(HttpSolrClient.class));
+    }
+
+    @Test
+    void shutdownClosesClients() throws IOException {
+        solrClientFactoryBean = newSolrClientFactoryBean(true);
+        solrClientFactoryBean.shutdown();
+        solrClientFactoryBean = null;
+
+        verify(cloudSolrClient).close();
+        verify(cloudHttp2SolrClient).close();
+    }
+
+    @Test
+    void connectionPool() throws Exception {
+        solrClientFactoryBean = newSolrClientFactoryBean(false, 10, 3);
+        final InstrumentedConnectionManager connectionManager = solrClientFactoryBean.connectionManager;
+        assertThat("max total", connectionManager.getMaxTotal(), is(10));
+        assertThat("max per route", connectionManager.getDefaultMaxPerRoute(), is(3));
+        assertThat("max gauge", gaugeValue("solr_connections_max"), is(10L));
+        assertThat("leased gauge", gaugeValue("solr_connections_leased"), is(0L));
+
+        connectionManager.requestConnection(new HttpRoute(new HttpHost("a", 8983)), null)
+                .get(1, TimeUnit.SECONDS);
+        assertThat("leased gauge after lease", gaugeValue("solr_connections_leased"), is(1L));
+        assertThat("pending gauge after lease", gaugeValue("solr_connections_pending"), is(0L));
+        assertThat("available gauge after lease", gaugeValue("solr_connections_available"), is(0L));
+        verify(leaseWaitTimer).update(any(Duration.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private long gaugeValue(String name) {
+        final ArgumentCaptor<Function<InstrumentedConnectionManager, Number>> gauge =
+                ArgumentCaptor.forClass(Function.class);
+        verify(metricRegistry).gauge(eq(name), eq(solrClientFactoryBean.connectionManager), gauge.capture());
+        return gauge.getValue().apply(solrClientFactoryBean.connectionManager).longValue();
+    }
+
+    /* Returns the replica client a routed frequency lookup is sent through */
+    private SolrClient frequencyLookupClient(Deadline deadline) throws Exception {
+        final HedgedRequestBean hedgedRequestBean = HedgedRequestBeanTest.newDisabledHedgedRequestBean();
+        hedgedRequestBean.solrClientFactoryBean = solrClientFactoryBean;
+        hedgedRequestBean.replicaRouterBean.enabled = true;
+        return hedgedRequestBean.execute(COLLECTION, solrClientFactoryBean.getFrequencyClient(), deadline,
+                (solrClient, collection) -> solrClient);
+    }
+
+    private SolrClientFactoryBean newSolrClientFactoryBean(boolean http2FrequencyLookups) {
+        return newSolrClientFactoryBean(http2FrequencyLookups, 32, 32);
+    }
+
+    private SolrClientFactoryBean newSolrClientFactoryBean(boolean http2FrequencyLookups, int maxConnections,
+                                                           int maxConnectionsPerHost) {
+        when(metricRegistry.timer("solr_connection_lease_wait")).thenReturn(leaseWaitTimer);
+        final SolrClientFactoryBean solrClientFactoryBean = spy(new SolrClientFactoryBean());
+        solrClientFactoryBean.metricRegistry = metricRegistry;
+        solrClientFactoryBean.maxConnections = maxConnections;
+        solrClientFactoryBean.maxConnectionsPerHost = maxConnectionsPerHost;
+        solrClientFactoryBean.soTimeoutMs = 5000;
+        solrClientFactoryBean.connectionTimeoutMs = 5000;
+        solrClientFactoryBean.http2FrequencyLookups = http2FrequencyLookups;
+        solrClientFactoryBean.http2MaxConnectionsPerHost = 4;
+        doReturn(cloudSolrClient).when(solrClientFactoryBean).createCloudSolrClient(any());
+        doReturn(cloudHttp2SolrClient).when(solrClientFactoryBean).createHttp2CloudSolrClient(any());
+        doReturn(List.of(CORE_URL)).when(solrClientFactoryBean).getLiveReplicaCoreUrls(COLLECTION);
+        solrClientFactoryBean.initialize();
+        return solrClientFactoryBean;
+    }
+}
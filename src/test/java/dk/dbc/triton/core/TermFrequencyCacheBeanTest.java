@@ -0,0 +1,169 @@
+package dk.dbc.triton.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TermFrequencyCacheBeanTest {
+    private static final String COLLECTION = "collection";
+    private static final String INDEX = "index";
+    private static final Deadline DEADLINE = Deadline.after(60000);
+
+    private final TermFrequencyCacheBean termFrequencyCacheBean = newTermFrequencyCacheBean(100);
+    private final List<List<String>> lookups = new ArrayList<>();
+
+    @BeforeEach
+    void setupExpectations() {
+        when(termFrequencyCacheBean.solrClientFactoryBean.resolveCollectionAlias(COLLECTION))
+                .thenReturn(COLLECTION);
+        when(termFrequencyCacheBean.indexVersionBean.getVersion(COLLECTION))
+                .thenReturn(Optional.of("1"));
+    }
+
+    @Test
+    void cachesFrequencies() {
+        assertThat("first lookup", termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX,
+                List.of("a", "b"), DEADLINE, this::lookup), is(Map.of("a", 1L, "b", 1L)));
+        assertThat("second lookup", termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX,
+                List.of("a", "b", "c"), DEADLINE, this::lookup), is(Map.of("a", 1L, "b", 1L, "c", 1L)));
+        assertThat("lookups", lookups.size(), is(2));
+        assertThat("only uncached value looked up", lookups.get(1), is(List.of("c")));
+    }
+
+    @Test
+    void indexVersionChangeInvalidates() {
+        termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup);
+        when(termFrequencyCacheBean.indexVersionBean.getVersion(COLLECTION))
+                .thenReturn(Optional.of("2"));
+        termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup);
+        assertThat("lookups", lookups.size(), is(2));
+    }
+
+    @Test
+    void unknownIndexVersionBypassesCache() {
+        when(termFrequencyCacheBean.indexVersionBean.getVersion(COLLECTION))
+                .thenReturn(Optional.empty());
+        termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup);
+        termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup);
+        assertThat("lookups", lookups.size(), is(2));
+    }
+
+    @Test
+    void concurrentLookupsAreDeduplicated() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        final CompletableFuture<Map<String, Long>> first = CompletableFuture.supplyAsync(() ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, values -> {
+                    lookupStarted.countDown();
+                    try {
+                        releaseLookup.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return Map.of("a", 42L);
+                }));
+        lookupStarted.await(10, TimeUnit.SECONDS);
+
+        final CompletableFuture<Map<String, Long>> second = CompletableFuture.supplyAsync(() ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup));
+        releaseLookup.countDown();
+
+        assertThat("first", first.get(10, TimeUnit.SECONDS), is(Map.of("a", 42L)));
+        assertThat("second", second.get(10, TimeUnit.SECONDS), is(Map.of("a", 42L)));
+        assertThat("lookups by second", lookups.isEmpty(), is(true));
+    }
+
+    @Test
+    void failedLookupOfOtherIsRepeated() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        final CompletableFuture<Map<String, Long>> first = CompletableFuture.supplyAsync(() ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, values -> {
+                    lookupStarted.countDown();
+                    try {
+                        releaseLookup.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    throw new DeadlineExpiredException("lookup timed out");
+                }));
+        lookupStarted.await(10, TimeUnit.SECONDS);
+
+        // The second request looks up b before waiting for a,
+        // so the first lookup fails while the second awaits it
+        final CompletableFuture<Map<String, Long>> second = CompletableFuture.supplyAsync(() ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a", "b"), DEADLINE, values -> {
+                    releaseLookup.countDown();
+                    return lookup(values);
+                }));
+
+        assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+        assertThat("second", second.get(10, TimeUnit.SECONDS), is(Map.of("a", 1L, "b", 1L)));
+        assertThat("lookups by second", lookups, is(List.of(List.of("b"), List.of("a"))));
+    }
+
+    @Test
+    void lookupOfOtherNotCompletingInTimeIsRepeated() throws Exception {
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        final CompletableFuture<Map<String, Long>> first = CompletableFuture.supplyAsync(() ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, values -> {
+                    lookupStarted.countDown();
+                    try {
+                        releaseLookup.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return Map.of("a", 42L);
+                }));
+        lookupStarted.await(10, TimeUnit.SECONDS);
+        try {
+            assertThat("second", termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"),
+                    Deadline.after(100), this::lookup), is(Map.of("a", 1L)));
+            assertThat("lookups by second", lookups, is(List.of(List.of("a"))));
+        } finally {
+            releaseLookup.countDown();
+        }
+        assertThat("first", first.get(10, TimeUnit.SECONDS), is(Map.of("a", 42L)));
+    }
+
+    @Test
+    void failedLookupIsNotCached() {
+        assertThrows(TritonException.class, () ->
+                termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, values -> {
+                    throw new TritonException("lookup failed");
+                }));
+        assertThat(termFrequencyCacheBean.getFrequencies(COLLECTION, INDEX, List.of("a"), DEADLINE, this::lookup),
+                is(Map.of("a", 1L)));
+    }
+
+    private synchronized Map<String, Long> lookup(List<String> values) {
+        lookups.add(values);
+        final Map<String, Long> frequencies = new HashMap<>();
+        values.forEach(value -> frequencies.put(value, 1L));
+        return frequencies;
+    }
+
+    public static TermFrequencyCacheBean newTermFrequencyCacheBean(long maxSize) {
+        final TermFrequencyCacheBean termFrequencyCacheBean = new TermFrequencyCacheBean();
+        termFrequencyCacheBean.solrClientFactoryBean = mock(SolrClientFactoryBean.class);
+        termFrequencyCacheBean.indexVersionBean = mock(IndexVersionBean.class);
+        termFrequencyCacheBean.cache = new LruCache<>(maxSize);
+        return termFrequencyCacheBean;
+    }
+}
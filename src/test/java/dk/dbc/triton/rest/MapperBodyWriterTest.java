@@ -0,0 +1,78 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt
+ */
+
+package dk.dbc.triton.rest;
+
+import dk.dbc.triton.core.ScanResult;
+import dk.dbc.triton.core.ScanResultTest;
+import org.junit.jupiter.api.Test;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import jakarta.ws.rs.core.UriInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MapperBodyWriterTest {
+    private final ScanResult scanResult = ScanResult.of(ScanResultTest.createTermsResponse("author"), "author");
+
+    @Test
+    void compactByDefault() throws IOException {
+        final JsonScanResultWriter writer = new JsonScanResultWriter();
+        writer.uriInfo = uriInfo(new MultivaluedHashMap<>());
+
+        assertThat(write(writer), not(containsString("\n")));
+    }
+
+    @Test
+    void prettyOnRequest() throws IOException {
+        final MultivaluedHashMap<String, String> queryParameters = new MultivaluedHashMap<>();
+        queryParameters.putSingle("pretty", "true");
+        final XmlScanResultWriter writer = new XmlScanResultWriter();
+        writer.uriInfo = uriInfo(queryParameters);
+
+        assertThat(write(writer), containsString("\n"));
+    }
+
+    @Test
+    void missingShards() throws IOException {
+        final JsonScanResultWriter writer = new JsonScanResultWriter();
+        writer.uriInfo = uriInfo(new MultivaluedHashMap<>());
+
+        assertThat("complete", write(writer), not(containsString("missingShards")));
+
+        scanResult.setMissingShards(List.of("shard2"));
+        assertThat("partial", write(writer), containsString("\"missingShards\":[\"shard2\"]"));
+    }
+
+    @Test
+    void isWriteable() {
+        assertThat("ScanResult", new JsonScanResultWriter().isWriteable(
+                ScanResult.class, ScanResult.class, null, MediaType.APPLICATION_JSON_TYPE), is(true));
+        assertThat("String", new JsonScanResultWriter().isWriteable(
+                String.class, String.class, null, MediaType.APPLICATION_JSON_TYPE), is(false));
+    }
+
+    private String write(MapperBodyWriter<ScanResult> writer) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(scanResult, ScanResult.class, ScanResult.class, null, null, null, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private static UriInfo uriInfo(MultivaluedHashMap<String, String> queryParameters) {
+        final UriInfo uriInfo = mock(UriInfo.class);
+        when(uriInfo.getQueryParameters()).thenReturn(queryParameters);
+        return uriInfo;
+    }
+}
@@ -5,36 +5,70 @@
 
 package dk.dbc.triton.rest;
 
-import dk.dbc.solr.SolrScan;
-import dk.dbc.solr.SolrSearch;
+import dk.dbc.triton.core.Deadline;
+import dk.dbc.triton.core.FacetScanBean;
+import dk.dbc.triton.core.HedgedRequestBeanTest;
+import dk.dbc.triton.core.ReplicaRouterBean;
+import dk.dbc.triton.core.ScanCursor;
+import dk.dbc.triton.core.ScanEngine;
+import dk.dbc.triton.core.ScanExecutorBeanTest;
 import dk.dbc.triton.core.ScanMapBeanTest;
 import dk.dbc.triton.core.ScanPos;
 import dk.dbc.triton.core.ScanResult;
+import dk.dbc.triton.core.ScanResultCacheBean;
+import dk.dbc.triton.core.ScanResults;
 import dk.dbc.triton.core.ScanResultTest;
 import dk.dbc.triton.core.ScanTermAdjusterBean;
+import dk.dbc.triton.core.ShardScanBeanTest;
 import dk.dbc.triton.core.SolrClientFactoryBean;
+import dk.dbc.triton.core.TritonException;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.TermsResponse;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.OutboundSseEvent;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.concurrent.Future;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -48,13 +82,15 @@ class ScanBeanTest {
     private static final int SIZE = 20;
     private static final boolean WITHOUT_EXACT_FREQUENCY = false;
     private static final String FIELD_TYPE = "dbc-phrase";
+    private static final String SHARD1 = "http://a:8983/solr/collection_shard1_replica_n1/";
+    private static final String SHARD2 = "http://b:8983/solr/collection_shard2_replica_n2/";
 
     private SolrClientFactoryBean solrClientFactoryBean = mock(SolrClientFactoryBean.class);
     private CloudSolrClient cloudSolrClient = mock(CloudSolrClient.class);
-    private SolrScan solrScan = mock(SolrScan.class);
     private TermsResponse termsResponse = ScanResultTest.createTermsResponse(INDEX);
     private ScanTermAdjusterBean scanTermAdjusterBean = mock(ScanTermAdjusterBean.class);
-    private Future<ScanResult.Term> future = mock(Future.class);
+    private ScanResultCacheBean scanResultCacheBean = mock(ScanResultCacheBean.class);
+    private FacetScanBean facetScanBean = mock(FacetScanBean.class);
 
     private ScanBean scanBean = createScanBean();
 
@@ -62,18 +98,11 @@ class ScanBeanTest {
     void setupExpectations() {
         try {
             when(solrClientFactoryBean.getCloudSolrClient()).thenReturn(cloudSolrClient);
-            when(scanTermAdjusterBean.adjustTermFrequency(eq(COLLECTION), eq(INDEX), any(ScanResult.Term.class)))
-                    .thenReturn(null);
-            when(scanTermAdjusterBean.normalizeByFieldType(COLLECTION, FIELD_TYPE, TERM))
+            when(scanTermAdjusterBean.getTermFrequencies(eq(COLLECTION), eq(INDEX), any(), any(Deadline.class)))
+                    .thenReturn(Map.of());
+            when(scanTermAdjusterBean.analyzeByFieldType(COLLECTION, FIELD_TYPE, TERM))
                     .thenReturn(TERM_NORMALIZED);
-            when(solrScan.withField(INDEX)).thenReturn(solrScan);
-            when(solrScan.withLimit(SIZE)).thenReturn(solrScan);
-            when(solrScan.withLower(TERM_NORMALIZED)).thenReturn(solrScan);
-            when(solrScan.withLowerInclusive(true)).thenReturn(solrScan);
-            when(solrScan.withUpper(TERM_NORMALIZED)).thenReturn(solrScan);
-            when(solrScan.withUpperInclusive(true)).thenReturn(solrScan);
-            when(solrScan.withRegex(INCLUDE)).thenReturn(solrScan);
-            when(solrScan.execute()).thenReturn(termsResponse);
+            solrAnswersTerms(termsResponse);
         } catch (IOException | SolrServerException e) {
             throw new IllegalStateException(e);
         }
@@ -82,15 +111,15 @@ class ScanBeanTest {
     @Test
     void scan_termParamIsMandatory() {
         WebApplicationException e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(null, INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(null, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "term is null");
         assertThat("term is null => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
 
         e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(" ", INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(" ", INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "term is empty");
         assertThat("term is empty => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
@@ -99,15 +128,15 @@ class ScanBeanTest {
     @Test
     void scan_indexParamIsMandatory() {
         WebApplicationException e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(TERM, null, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(TERM, null, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "index is null");
         assertThat("index is null => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
 
         e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(TERM, " ", COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(TERM, " ", COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "term is empty");
         assertThat("index is empty => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
@@ -115,13 +144,12 @@ class ScanBeanTest {
 
     @Test
     void scan_collectionNotFound() throws IOException, SolrServerException {
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
-        doThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection not found"))
-                .when(solrScan).execute();
+        final ScanBean scanBean = createScanBean();
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection not found"));
         final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "collection not found");
         assertThat("collection not found => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
@@ -129,100 +157,623 @@ class ScanBeanTest {
 
     @Test
     void scan_indexNotFound() throws IOException, SolrServerException {
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
+        final ScanBean scanBean = createScanBean();
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Index not found"));
         final TermsResponse termsResponse = ScanResultTest.createTermsResponse(INDEX);
         termsResponse.getTermMap().clear();
-        when(solrScan.execute()).thenReturn(termsResponse);
-
-        final SolrSearch solrSearch = mock(SolrSearch.class);
-        doReturn(solrSearch).when(scanBean).createSolrSearch(cloudSolrClient, COLLECTION);
-        when(solrSearch.withQuery(anyString())).thenReturn(solrSearch);
-        when(solrSearch.withRows(0)).thenReturn(solrSearch);
-        doThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Index not found"))
-                .when(solrSearch).execute();
+        solrAnswersTerms(termsResponse);
 
         final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
-                scanBean.scan(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)),
                 "Index not found");
         assertThat("Index not found => Bad Request",
                 e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
     }
 
     @Test
-    void scan() {
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
+    void scan() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
 
         assertThat("scan",
-                scanBean.scan(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).getStatus(),
+                scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getStatus(),
                 is(Response.Status.OK.getStatusCode()));
 
-        verify(solrScan).withField(INDEX);
-        verify(solrScan).withLimit(SIZE);
-        verify(solrScan).withLower(TERM_NORMALIZED);
-        verify(solrScan).withLowerInclusive(true);
-        verify(solrScan).withRegex(INCLUDE);
+        SolrQuery query = termsQueries().get(0);
+        assertThat("request handler", query.getRequestHandler(), is("/terms"));
+        assertThat("field", query.getTermsFields(), is(new String[] {INDEX}));
+        assertThat("limit", query.getTermsLimit(), is(SIZE));
+        assertThat("lower", query.getTermsLower(), is(TERM_NORMALIZED));
+        assertThat("lower inclusive", query.getTermsLowerInclusive(), is(true));
+        assertThat("regex", query.getTermsRegex(), is(INCLUDE));
 
         assertThat("scan pos=last",
-                scanBean.scan(TERM, INDEX, COLLECTION, ScanPos.LAST, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).getStatus(),
+                scanBean.scan(params(TERM, INDEX, COLLECTION, ScanPos.LAST, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getStatus(),
                 is(Response.Status.OK.getStatusCode()));
 
-        verify(solrScan).withUpper(TERM_NORMALIZED);
-        verify(solrScan).withUpperInclusive(true);
+        query = termsQueries().get(1);
+        assertThat("upper", query.getTermsUpper(), is(TERM_NORMALIZED));
+        assertThat("upper inclusive", query.getTermsUpperInclusive(), is(true));
     }
 
     @Test
-    void scan_withIndexAlias() {
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
+    void scan_withIndexAlias() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
 
         assertThat("scan",
-                scanBean.scan(TERM, "mti", COLLECTION, POS, SIZE, INCLUDE,
-                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).getStatus(),
+                scanBean.scan(params(TERM, "mti", COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getStatus(),
                 is(Response.Status.OK.getStatusCode()));
 
-        verify(solrScan).withField(INDEX);
+        assertThat("field", termsQueries().get(0).getTermsFields(), is(new String[] {INDEX}));
     }
 
     @Test
     void scan_withExactFrequency() {
-        when(scanTermAdjusterBean.adjustTermFrequency(eq(COLLECTION), eq(INDEX), any(ScanResult.Term.class)))
-                .thenReturn(future);
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b", "c")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L, "c", 30L));
+        final ScanBean scanBean = createScanBean();
 
-        assertThat("scan",
-                scanBean.scan(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
-                        true, FIELD_TYPE).getStatus(),
+        final Response response = scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE));
+        assertThat("scan", response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        assertThat("adjusted terms", ((ScanResult) response.getEntity()).getTerms(), is(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                new ScanResult.Term("c", 30))));
+    }
+
+    @Test
+    void scan_withExactFrequencyInBatches() {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L));
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("c")), any(Deadline.class)))
+                .thenReturn(Map.of("c", 30L));
+        final ScanBean scanBean = createScanBean();
+        scanBean.frequencyBatchSize = 2;
+
+        final Response response = scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE));
+        assertThat("adjusted terms", ((ScanResult) response.getEntity()).getTerms(), is(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                new ScanResult.Term("c", 30))));
+
+        verify(scanTermAdjusterBean).getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b")), any(Deadline.class));
+        verify(scanTermAdjusterBean).getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("c")), any(Deadline.class));
+    }
+
+    @Test
+    void scan_cachedResult() throws IOException, SolrServerException {
+        final ScanResultCacheBean.Key key = new ScanResultCacheBean.Key(COLLECTION, "version", INDEX,
+                TERM_NORMALIZED, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, ScanEngine.TERMS, null);
+        final ScanResult cachedScanResult = ScanResult.of(termsResponse, INDEX);
+        when(scanResultCacheBean.keyOf(COLLECTION, INDEX, TERM_NORMALIZED, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, ScanEngine.TERMS, null)).thenReturn(Optional.of(key));
+        when(scanResultCacheBean.get(key)).thenReturn(Optional.of(cachedScanResult));
+        final ScanBean scanBean = createScanBean();
+
+        assertThat("cached result", scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getEntity(), is(cachedScanResult));
+        verify(cloudSolrClient, never()).query(eq(COLLECTION), any(SolrQuery.class));
+    }
+
+    @Test
+    void scan_resultIsCached() {
+        final ScanResultCacheBean.Key key = new ScanResultCacheBean.Key(COLLECTION, "version", INDEX,
+                TERM_NORMALIZED, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, ScanEngine.TERMS, null);
+        when(scanResultCacheBean.keyOf(COLLECTION, INDEX, TERM_NORMALIZED, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, ScanEngine.TERMS, null)).thenReturn(Optional.of(key));
+        final ScanBean scanBean = createScanBean();
+
+        scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE));
+
+        verify(scanResultCacheBean).put(key, scanResult());
+    }
+
+    @Test
+    void scan_facetEngine() throws IOException, SolrServerException {
+        final ScanResult facetScanResult = ScanResult.of(termsResponse, INDEX);
+        when(facetScanBean.scan(eq(COLLECTION), eq(INDEX), eq(TERM_NORMALIZED), eq(true), eq(SIZE), eq(INCLUDE),
+                eq("agency:870970"), any(Deadline.class))).thenReturn(facetScanResult);
+        final ScanBean scanBean = createScanBean();
+
+        final Response response = scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE).withEngine(ScanEngine.FACET).withFq("agency:870970"));
+        assertThat("facet result", response.getEntity(), is(facetScanResult));
+        verify(cloudSolrClient, never()).query(eq(COLLECTION), any(SolrQuery.class));
+        verify(scanTermAdjusterBean, never()).getTermFrequencies(any(), any(), any(), any());
+    }
+
+    @Test
+    void scan_truncatedFacetScan() {
+        final ScanResultCacheBean.Key key = new ScanResultCacheBean.Key(COLLECTION, "version", INDEX,
+                TERM_NORMALIZED, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, ScanEngine.FACET, null);
+        when(scanResultCacheBean.keyOf(COLLECTION, INDEX, TERM_NORMALIZED, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, ScanEngine.FACET, null)).thenReturn(Optional.of(key));
+        final ScanResult facetScanResult = ScanResult.of(termsResponse, INDEX);
+        facetScanResult.setTruncated(true);
+        when(facetScanBean.scan(eq(COLLECTION), eq(INDEX), eq(TERM_NORMALIZED), eq(true), eq(SIZE), eq(INCLUDE),
+                any(), any(Deadline.class))).thenReturn(facetScanResult);
+
+        final ScanResult scanResult = (ScanResult) scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withEngine(ScanEngine.FACET)).getEntity();
+        assertThat("truncated", scanResult.getTruncated(), is(true));
+        assertThat("next", ScanCursor.decode(scanResult.getNext()).bound(), is(new ScanCursor.Bound("c", false)));
+        verify(scanResultCacheBean, never()).put(any(), any());
+    }
+
+    @Test
+    void scan_facetEngineOnlyScansForward() {
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scan(params(TERM, INDEX, COLLECTION, ScanPos.LAST, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withEngine(ScanEngine.FACET)));
+        assertThat("pos last => Bad Request",
+                e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+        assertThat("message", e.getResponse().getEntity(), is("pos last is not supported by the facet engine"));
+    }
+
+    @Test
+    void scan_shardsEngineOnlyScansForward() {
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scan(params(TERM, INDEX, COLLECTION, ScanPos.LAST, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withEngine(ScanEngine.SHARDS)));
+        assertThat("pos last => Bad Request",
+                e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+        assertThat("message", e.getResponse().getEntity(), is("pos last is not supported by the shards engine"));
+    }
+
+    @Test
+    void scan_shardsEngineAgreesWithTermsEngine() throws IOException, SolrServerException {
+        final SortedMap<String, Long> shard1 = new TreeMap<>(Map.of("a", 1L, "c", 3L, "e", 5L, "g", 1L));
+        final SortedMap<String, Long> shard2 = new TreeMap<>(Map.of("b", 2L, "c", 3L, "d", 4L, "f", 2L));
+        final SortedMap<String, Long> index = new TreeMap<>(shard1);
+        shard2.forEach((term, frequency) -> index.merge(term, frequency, Long::sum));
+        final SolrClient shard1Client = mock(SolrClient.class);
+        final SolrClient shard2Client = mock(SolrClient.class);
+        when(shard1Client.query(any(SolrParams.class)))
+                .thenAnswer(invocation -> termsComponent(invocation.getArgument(0), shard1));
+        when(shard2Client.query(any(SolrParams.class)))
+                .thenAnswer(invocation -> termsComponent(invocation.getArgument(0), shard2));
+        when(cloudSolrClient.query(eq(COLLECTION), argThat(ScanBeanTest::isTermsQuery)))
+                .thenAnswer(invocation -> termsComponent(invocation.getArgument(1), index));
+        when(solrClientFactoryBean.getLiveShardCoreUrls(COLLECTION)).thenReturn(Map.of(
+                "shard1", List.of(SHARD1),
+                "shard2", List.of(SHARD2)));
+        when(solrClientFactoryBean.getReplicaClient(SHARD1)).thenReturn(shard1Client);
+        when(solrClientFactoryBean.getReplicaClient(SHARD2)).thenReturn(shard2Client);
+        when(scanTermAdjusterBean.analyzeByFieldType(eq(COLLECTION), eq(FIELD_TYPE), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(2));
+        scanBean.shardScanBean = ShardScanBeanTest.newShardScanBean(solrClientFactoryBean,
+                scanBean.scanExecutorBean);
+
+        for (String term : List.of("a", "c", "cc", "f")) {
+            for (int size : List.of(1, 2, 3, 10)) {
+                final ScanResult terms = (ScanResult) scanBean.scan(params(term, INDEX, COLLECTION, POS, size,
+                        "", WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withEngine(ScanEngine.TERMS)).getEntity();
+                final ScanResult shards = (ScanResult) scanBean.scan(params(term, INDEX, COLLECTION, POS, size,
+                        "", WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withEngine(ScanEngine.SHARDS)).getEntity();
+                assertThat(term + " size " + size, shards.getTerms(), is(terms.getTerms()));
+            }
+        }
+    }
+
+    @Test
+    void scan_filterQueryRequiresFacetEngine() {
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withFq("agency:870970")));
+        assertThat("fq with terms engine => Bad Request",
+                e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    void scanAsync() {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b", "c")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L, "c", 30L));
+        final ScanBean scanBean = createScanBean();
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        scanBean.scanAsync(asyncResponse, params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE));
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse, timeout(5000)).resume(responseCaptor.capture());
+        assertThat("status", responseCaptor.getValue().getStatus(),
                 is(Response.Status.OK.getStatusCode()));
+        assertThat("adjusted terms", ((ScanResult) responseCaptor.getValue().getEntity()).getTerms(), is(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                new ScanResult.Term("c", 30))));
+    }
+
+    @Test
+    void scanAsync_collectionNotFound() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class)))
+                .thenThrow(new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Collection not found"));
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        scanBean.scanAsync(asyncResponse, params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE));
+
+        final ArgumentCaptor<Throwable> exceptionCaptor = ArgumentCaptor.forClass(Throwable.class);
+        verify(asyncResponse, timeout(5000)).resume(exceptionCaptor.capture());
+        assertThat("exception", exceptionCaptor.getValue(), instanceOf(WebApplicationException.class));
+        assertThat("collection not found => Bad Request",
+                ((WebApplicationException) exceptionCaptor.getValue()).getResponse().getStatus(),
+                is(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    void scan_multipleIndexes() throws IOException, SolrServerException {
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getTermsResponse()).thenReturn(ScanResultTest.createTermsResponse(INDEX, "scan.lti"));
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class))).thenReturn(queryResponse);
+        final ScanBean scanBean = createScanBean();
+
+        final Response response = scanBean.scan(params(TERM, "mti, scan.lti", COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE));
+        assertThat("per-index results", response.getEntity(), is(new ScanResults(List.of(
+                ScanResult.of(ScanResultTest.createTermsResponse(INDEX), INDEX),
+                ScanResult.of(ScanResultTest.createTermsResponse("scan.lti"), "scan.lti")))));
+        verify(cloudSolrClient).query(eq(COLLECTION), any(SolrQuery.class));
+    }
+
+    @Test
+    void scan_multipleIndexesMerged() throws IOException, SolrServerException {
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getTermsResponse()).thenReturn(ScanResultTest.createTermsResponse(INDEX, "scan.lti"));
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class))).thenReturn(queryResponse);
+        final ScanBean scanBean = createScanBean();
+
+        final Response response = scanBean.scan(params(TERM, "mti,scan.lti", COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withMerge(true));
+        final ScanResult scanResult = (ScanResult) response.getEntity();
+        assertThat("index", scanResult.getIndex(), is(INDEX + ",scan.lti"));
+        assertThat("terms", scanResult.getTerms(), is(List.of(
+                new ScanResult.Term("a", 2),
+                new ScanResult.Term("b", 4),
+                new ScanResult.Term("c", 6))));
+    }
+
+    @Test
+    void scan_multipleIndexesMergedLast() throws IOException, SolrServerException {
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getTermsResponse()).thenReturn(ScanResultTest.createTermsResponse(INDEX, "scan.lti"));
+        when(cloudSolrClient.query(eq(COLLECTION), any(SolrQuery.class))).thenReturn(queryResponse);
+        final ScanBean scanBean = createScanBean();
 
-        verify(scanTermAdjusterBean).adjustTermFrequency(COLLECTION, INDEX,
-                new ScanResult.Term("a", 1));
-        verify(scanTermAdjusterBean).adjustTermFrequency(COLLECTION, INDEX,
-                new ScanResult.Term("b", 2));
-        verify(scanTermAdjusterBean).adjustTermFrequency(COLLECTION, INDEX,
-                new ScanResult.Term("c", 3));
+        final Response response = scanBean.scan(params(TERM, "mti,scan.lti", COLLECTION, ScanPos.LAST, 2, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withMerge(true));
+        final ScanResult scanResult = (ScanResult) response.getEntity();
+        assertThat("first terms up to the term, like a single index scan", scanResult.getTerms(), is(List.of(
+                new ScanResult.Term("a", 2),
+                new ScanResult.Term("b", 4))));
+    }
+
+    @Test
+    void scan_cursors() {
+        final ScanBean scanBean = createScanBean();
+
+        final ScanResult scanResult = (ScanResult) scanBean.scan(params(TERM, INDEX, COLLECTION, POS, 3, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getEntity();
+        assertThat("next", ScanCursor.decode(scanResult.getNext()),
+                is(new ScanCursor(COLLECTION, INDEX, new ScanCursor.Bound("c", false),
+                        List.of(new ScanCursor.Bound(TERM_NORMALIZED, true)))));
+        assertThat("no previous page", scanResult.getPrevious(), is(nullValue()));
+    }
+
+    @Test
+    void scan_lastHasNoPreviousCursor() {
+        final ScanBean scanBean = createScanBean();
+
+        final ScanResult scanResult = (ScanResult) scanBean.scan(params(TERM, INDEX, COLLECTION, ScanPos.LAST, 3,
+                INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)).getEntity();
+        assertThat("next", ScanCursor.decode(scanResult.getNext()),
+                is(new ScanCursor(COLLECTION, INDEX, new ScanCursor.Bound("c", false), List.of())));
+        assertThat("no previous page", scanResult.getPrevious(), is(nullValue()));
+    }
+
+    @Test
+    void scan_followCursor() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
+
+        final ScanCursor first = new ScanCursor(COLLECTION, INDEX, new ScanCursor.Bound("a", true), List.of());
+        final ScanCursor cursor = first.next("c");
+        final Response response = scanBean.scan(new ScanParams()
+                .withCursor(cursor.encode())
+                .withSize(3)
+                .withExactFrequency(WITHOUT_EXACT_FREQUENCY));
+        assertThat("status", response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        final SolrQuery query = termsQueries().get(0);
+        assertThat("lower", query.getTermsLower(), is("c"));
+        assertThat("lower inclusive", query.getTermsLowerInclusive(), is(false));
+        final ScanResult scanResult = (ScanResult) response.getEntity();
+        assertThat("previous", ScanCursor.decode(scanResult.getPrevious()), is(first));
+        assertThat("next", ScanCursor.decode(scanResult.getNext()), is(cursor.next("c")));
+        verify(scanTermAdjusterBean, never()).analyzeByFieldType(anyString(), anyString(), anyString());
+        verify(scanResultCacheBean, never()).keyOf(any(), any(), any(), any(), any(Integer.class), any(),
+                any(Boolean.class), any(), any());
+    }
+
+    @Test
+    void scan_followPreviousCursor() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
+
+        final ScanCursor first = new ScanCursor(COLLECTION, INDEX, new ScanCursor.Bound("a", true), List.of());
+        final Response response = scanBean.scan(new ScanParams()
+                .withCursor(first.encode())
+                .withExactFrequency(WITHOUT_EXACT_FREQUENCY));
+        assertThat("status", response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        final SolrQuery query = termsQueries().get(0);
+        assertThat("lower", query.getTermsLower(), is("a"));
+        assertThat("lower inclusive", query.getTermsLowerInclusive(), is(true));
+    }
+
+    @Test
+    void scan_malformedCursor() {
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scan(new ScanParams().withCursor("not a cursor")));
+        assertThat("status", e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    void scanStream() throws IOException {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L));
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("c")), any(Deadline.class)))
+                .thenReturn(Map.of("c", 30L));
+        final ScanBean scanBean = createScanBean();
+        scanBean.frequencyBatchSize = 2;
+
+        final ScanParams params = params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, true, FIELD_TYPE);
+        final Response response = scanBean.scanStream(params);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        assertThat("output", outputStream.toString(StandardCharsets.UTF_8), is(
+                "{\"value\":\"a\",\"frequency\":10}\n" +
+                "{\"value\":\"b\",\"frequency\":20}\n" +
+                "{\"value\":\"c\",\"frequency\":30}\n"));
+        assertThat("params unchanged", params.isWithExactFrequency(), is(true));
+    }
+
+    @Test
+    void scanEvents() {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b", "c")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L, "c", 30L));
+        final ScanBean scanBean = createScanBean();
+        final SseEventSink eventSink = mock(SseEventSink.class);
+        final Sse sse = mock(Sse.class);
+        final OutboundSseEvent.Builder eventBuilder = mock(OutboundSseEvent.Builder.class, RETURNS_SELF);
+        when(sse.newEventBuilder()).thenReturn(eventBuilder);
+
+        scanBean.scanEvents(eventSink, sse, params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE));
+
+        verify(eventSink, timeout(5000)).close();
+        final InOrder inOrder = inOrder(eventBuilder);
+        inOrder.verify(eventBuilder).name("scan");
+        inOrder.verify(eventBuilder).data(scanResult());
+        inOrder.verify(eventBuilder).name("frequency");
+        inOrder.verify(eventBuilder).data(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                new ScanResult.Term("c", 30)));
+        inOrder.verify(eventBuilder).name("complete");
+    }
+
+    @Test
+    void scanBatch() {
+        final ScanBean scanBean = createScanBean();
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        scanBean.scanBatch(asyncResponse, List.of(
+                params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE),
+                params(TERM, "mti", COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE)));
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse, timeout(5000)).resume(responseCaptor.capture());
+        assertThat("status", responseCaptor.getValue().getStatus(),
+                is(Response.Status.OK.getStatusCode()));
+        assertThat("results", responseCaptor.getValue().getEntity(), is(new ScanResults(List.of(
+                scanResult(), scanResult()))));
+        verify(scanTermAdjusterBean, times(1)).analyzeByFieldType(COLLECTION, FIELD_TYPE, TERM);
+    }
+
+    @Test
+    void scanBatch_tooManyScans() {
+        final ScanBean scanBean = createScanBean();
+        scanBean.batchMaxSize = 1;
+        final ScanParams params = params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE);
+
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scanBatch(mock(AsyncResponse.class), List.of(params, params)));
+        assertThat("status", e.getResponse().getStatus(), is(Response.Status.BAD_REQUEST.getStatusCode()));
+    }
+
+    @Test
+    void scan_deadlineExpiresDuringExactFrequencyPhase() {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L));
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("c")), any(Deadline.class)))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(1000);
+                    return Map.of("c", 30L);
+                });
+        final ScanBean scanBean = createScanBean();
+        scanBean.frequencyBatchSize = 2;
+
+        final Response response = scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE).withTimeout(200));
+        assertThat("status", response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        final ScanResult.Term approximateTerm = new ScanResult.Term("c", 3);
+        approximateTerm.setExact(false);
+        assertThat("terms", ((ScanResult) response.getEntity()).getTerms(), is(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                approximateTerm)));
+        verify(scanResultCacheBean, never()).put(any(), any());
+    }
+
+    @Test
+    void scan_failedFrequencyLookupMarksTermsNotExact() {
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("a", "b")), any(Deadline.class)))
+                .thenReturn(Map.of("a", 10L, "b", 20L));
+        when(scanTermAdjusterBean.getTermFrequencies(
+                eq(COLLECTION), eq(INDEX), eq(List.of("c")), any(Deadline.class)))
+                .thenThrow(new TritonException("solr unavailable"));
+        final ScanBean scanBean = createScanBean();
+        scanBean.frequencyBatchSize = 2;
+
+        final Response response = scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                true, FIELD_TYPE));
+        assertThat("status", response.getStatus(), is(Response.Status.OK.getStatusCode()));
+        final ScanResult.Term approximateTerm = new ScanResult.Term("c", 3);
+        approximateTerm.setExact(false);
+        assertThat("terms", ((ScanResult) response.getEntity()).getTerms(), is(List.of(
+                new ScanResult.Term("a", 10),
+                new ScanResult.Term("b", 20),
+                approximateTerm)));
+        verify(scanResultCacheBean, never()).put(any(), any());
     }
 
     @Test
     void scan_normalizeTermByFieldType() {
-        final ScanBean scanBean = spy(createScanBean());
-        doReturn(solrScan).when(scanBean).createSolrScan(cloudSolrClient, COLLECTION);
+        final ScanBean scanBean = createScanBean();
+
+        scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE));
+
+        verify(scanTermAdjusterBean).analyzeByFieldType(COLLECTION, FIELD_TYPE, TERM);
+    }
 
-        scanBean.scan(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE);
+    @Test
+    void scan_cachedNormalizationSkipsSolr() {
+        when(scanTermAdjusterBean.getCachedNormalization(COLLECTION, FIELD_TYPE, TERM))
+                .thenReturn(Optional.of(TERM_NORMALIZED));
+        final ScanBean scanBean = createScanBean();
+
+        scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE, WITHOUT_EXACT_FREQUENCY, FIELD_TYPE));
+
+        verify(scanTermAdjusterBean, never()).analyzeByFieldType(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void scan_deadlineBoundsNormalization() {
+        when(scanTermAdjusterBean.analyzeByFieldType(COLLECTION, FIELD_TYPE, TERM))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(1000);
+                    return TERM_NORMALIZED;
+                });
+        final ScanBean scanBean = createScanBean();
+
+        final WebApplicationException e = assertThrows(WebApplicationException.class, () ->
+                scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                        WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withTimeout(200)));
+        assertThat("status", e.getResponse().getStatus(), is(Response.Status.GATEWAY_TIMEOUT.getStatusCode()));
+    }
+
+    @Test
+    void scan_termsRequestCarriesTimeAllowed() throws IOException, SolrServerException {
+        final ScanBean scanBean = createScanBean();
+
+        scanBean.scan(params(TERM, INDEX, COLLECTION, POS, SIZE, INCLUDE,
+                WITHOUT_EXACT_FREQUENCY, FIELD_TYPE).withTimeout(5000));
+
+        final Integer timeAllowed = termsQueries().get(0).getTimeAllowed();
+        assertThat("timeAllowed within deadline", timeAllowed > 0 && timeAllowed <= 5000, is(true));
+    }
+
+    private void solrAnswersTerms(TermsResponse termsResponse) throws IOException, SolrServerException {
+        final QueryResponse queryResponse = mock(QueryResponse.class);
+        when(queryResponse.getTermsResponse()).thenReturn(termsResponse);
+        when(cloudSolrClient.query(eq(COLLECTION), argThat(ScanBeanTest::isTermsQuery))).thenReturn(queryResponse);
+    }
+
+    /* Answers a terms request the way the solr terms component does, walking
+       the terms in index order from the lower bound until the upper bound
+       or the limit is reached */
+    private static QueryResponse termsComponent(SolrQuery query, SortedMap<String, Long> terms) {
+        SortedMap<String, Long> range = terms;
+        final String lower = query.getTermsLower();
+        if (lower != null && !lower.isEmpty()) {
+            range = range.tailMap(query.getTermsLowerInclusive() ? lower : lower + "\u0000");
+        }
+        final String upper = query.getTermsUpper();
+        if (upper != null && !upper.isEmpty()) {
+            range = range.headMap(query.getTermsUpperInclusive() ? upper + "\u0000" : upper);
+        }
+        final NamedList<Object> indexTerms = new NamedList<>();
+        range.entrySet().stream()
+                .limit(query.getTermsLimit() < 0 ? Long.MAX_VALUE : query.getTermsLimit())
+                .forEach(entry -> indexTerms.add(entry.getKey(), entry.getValue()));
+        final NamedList<NamedList<Object>> fields = new NamedList<>();
+        fields.add(query.getTermsFields()[0], indexTerms);
+        final NamedList<Object> response = new NamedList<>();
+        response.add("terms", fields);
+        final QueryResponse queryResponse = new QueryResponse();
+        queryResponse.setResponse(response);
+        return queryResponse;
+    }
+
+    private List<SolrQuery> termsQueries() throws IOException, SolrServerException {
+        final ArgumentCaptor<SolrQuery> queryCaptor = ArgumentCaptor.forClass(SolrQuery.class);
+        verify(cloudSolrClient, atLeastOnce()).query(eq(COLLECTION), queryCaptor.capture());
+        return queryCaptor.getAllValues().stream()
+                .filter(ScanBeanTest::isTermsQuery)
+                .collect(Collectors.toList());
+    }
+
+    private static boolean isTermsQuery(SolrParams params) {
+        return params instanceof SolrQuery && "/terms".equals(((SolrQuery) params).getRequestHandler());
+    }
+
+    private ScanResult scanResult() {
+        return ScanResult.of(termsResponse, INDEX);
+    }
 
-        verify(scanTermAdjusterBean).normalizeByFieldType(COLLECTION, FIELD_TYPE, TERM);
+    private static ScanParams params(String term, String index, String collection, ScanPos pos, int size,
+                                     String include, boolean withExactFrequency, String fieldType) {
+        return new ScanParams()
+                .withTerm(term)
+                .withIndex(index)
+                .withCollection(collection)
+                .withPos(pos)
+                .withSize(size)
+                .withInclude(include)
+                .withExactFrequency(withExactFrequency)
+                .withFieldType(fieldType);
     }
 
     private ScanBean createScanBean() {
         final ScanBean scanBean = new ScanBean();
         scanBean.solrClientFactoryBean = solrClientFactoryBean;
+        scanBean.hedgedRequestBean = HedgedRequestBeanTest.newDisabledHedgedRequestBean();
+        scanBean.replicaRouterBean = new ReplicaRouterBean();
         scanBean.scanTermAdjusterBean = scanTermAdjusterBean;
         scanBean.scanMapBean = ScanMapBeanTest.newScanMapBean();
+        scanBean.scanResultCacheBean = scanResultCacheBean;
+        scanBean.facetScanBean = facetScanBean;
+        scanBean.scanExecutorBean = ScanExecutorBeanTest.newScanExecutorBean();
+        scanBean.frequencyBatchSize = 50;
+        scanBean.batchMaxSize = 20;
+        scanBean.defaultTimeoutMs = 10000;
         return scanBean;
     }
 }